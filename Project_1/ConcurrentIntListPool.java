@@ -0,0 +1,350 @@
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-capacity node pool that can be shared by any number of threads. The nodes
+ * follow the same model as in {@code IntListPool}, an int key and the index of the
+ * successor with 0 denoting no successor, but allocation and release are safe to call
+ * concurrently.
+ *
+ * Each thread keeps a small cache of free nodes, its magazine, from which it allocates
+ * and to which it releases. Only its own thread touches the nodes of a magazine, so
+ * allocation and release take no lock, and apart from the striped node count, they only
+ * need atomic operations when a whole batch moves. Magazines exchange nodes with the
+ * shared pool one batch at a time. Full
+ * batches are kept in a lock-free stack whose top is a node index packed together with a
+ * version tag that is bumped on every update, so that a thread that was preempted during
+ * a pop cannot be fooled by the same batch having been popped and pushed back in the
+ * meantime. Nodes that have never been used are handed out in batches from a shared
+ * high-water mark.
+ *
+ * A magazine holds up to two batches of its own, and one more spare batch that it has
+ * published for other threads, so free nodes can sit in the magazines of other threads
+ * while the shared pool is empty. Before reporting that no space is left, a thread
+ * therefore takes the spare batches of the other magazines, which are kept in a registry
+ * for this purpose, each with a single atomic exchange. The other nodes of a magazine
+ * only become available to other threads when its thread calls {@code flush} or
+ * terminates. Each magazine refers to its thread only weakly, and the first thread that
+ * finds the magazine of a terminated thread returns all its nodes to the shared pool and
+ * drops it from the registry, so nodes are never lost to a thread that did not call
+ * {@code flush}.
+ *
+ * Reading and writing the keys and successors of the nodes is not synchronized; as with
+ * any other data structure, a chain built in one thread must be safely published before
+ * another thread reads it.
+ */
+public class ConcurrentIntListPool {
+
+    // The keys and successors of the nodes.
+    private final int[] key;
+    private final int[] next;
+    // Number of nodes moved between a magazine and the shared pool at a time.
+    private final int batchSize;
+
+    // Top of the stack of free batches: version tag in the high half, index of the
+    // first node of the top batch in the low half. The nodes of a batch are chained
+    // through their successors, and the key of the first node of a batch holds the
+    // index of the first node of the next batch in the stack.
+    private final AtomicLong batchStack = new AtomicLong();
+    // Nodes at this index and above have never been allocated.
+    private final AtomicInteger highWater = new AtomicInteger(1);
+    // Current number of allocated nodes, striped to keep the counting contention-free.
+    private final LongAdder allocatedNodeCount = new LongAdder();
+
+    // The per-thread cache of free nodes. Only the owner accesses the nodes and the count,
+    // until it has terminated and another thread has claimed the magazine.
+    private static class Magazine {
+        final int[] nodes;
+        int count;
+        // The first node of a batch that any thread may take, chained through the
+        // successors, 0 if there is none.
+        final AtomicInteger spare = new AtomicInteger();
+        // Set by the one thread that returns the nodes of a terminated owner.
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        Magazine(int size) { nodes = new int[size]; }
+    }
+    private final ThreadLocal<Magazine> magazines;
+    // Every magazine that may still hold nodes, so that threads can take nodes from each other.
+    private final ConcurrentLinkedQueue<Magazine> registry = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a new concurrent pool.
+     * @param capacity Total number of nodes available in the pool.
+     * @param batchSize Number of nodes moved between the per-thread caches and the shared
+     * pool at a time. Larger batches mean less contention but more nodes held by threads.
+     */
+    public ConcurrentIntListPool(int capacity, int batchSize) {
+        if(capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Capacity and batch size must be positive.");
+        }
+        key = new int[capacity];
+        next = new int[capacity];
+        this.batchSize = batchSize;
+        magazines = ThreadLocal.withInitial(() -> {
+            Magazine mag = new Magazine(2 * batchSize);
+            registry.add(mag);
+            return mag;
+        });
+    }
+
+    /**
+     * Returns the current number of allocated nodes.
+     * @return The current number of allocated nodes.
+     */
+    public long getAllocatedNodeCount() {
+        return allocatedNodeCount.sum();
+    }
+
+    // Verify that the node n is inside the pool. Unlike the single-threaded pools, this
+    // pool does not track which nodes are allocated.
+    private void verifyIndex(int n) {
+        if(n < 1 || n >= key.length) {
+            throw new IllegalStateException("Node " + n + " is not inside the pool.");
+        }
+    }
+
+    /**
+     * Returns the key of node {@code n}.
+     * @param n The index of node whose key is read.
+     * @return The key of node {@code n}.
+     */
+    public int getKey(int n) {
+        verifyIndex(n);
+        return key[n];
+    }
+
+    /**
+     * Returns the successor of node {@code n}.
+     * @param n The index of node whose successor is read.
+     * @return The successor of node {@code n}.
+     */
+    public int getNext(int n) {
+        verifyIndex(n);
+        return next[n];
+    }
+
+    /**
+     * Assigns a new key to node {@code n}.
+     * @param n The index of node whose key is assigned.
+     * @param k The new key of the node.
+     * @return The previous key of node {@code n} before this assignment.
+     */
+    public int setKey(int n, int k) {
+        verifyIndex(n);
+        int result = key[n];
+        key[n] = k;
+        return result;
+    }
+
+    /**
+     * Assigns a new successor node to node {@code n}.
+     * @param n The index of node whose successor is assigned.
+     * @param m The new successor of the node.
+     * @return The previous successor of node {@code n} before this assignment.
+     */
+    public int setNext(int n, int m) {
+        verifyIndex(n);
+        int result = next[n];
+        next[n] = m;
+        return result;
+    }
+
+    /**
+     * Allocates a new node with the given key.
+     * @param k The key for the new node.
+     * @return The index of the new allocated node.
+     */
+    public int allocate(int k) {
+        Magazine mag = magazines.get();
+        if(mag.count == 0) { refill(mag); }
+        int n = mag.nodes[--mag.count];
+        key[n] = k;
+        next[n] = 0;
+        allocatedNodeCount.increment();
+        return n;
+    }
+
+    /**
+     * Allocates a chain of nodes for the keys in the parameter array.
+     * @param keys The array of keys to convert into a linked list.
+     * @return The index of the first node of the chain.
+     */
+    public int allocate(int[] keys) {
+        Magazine mag = magazines.get();
+        int prev = 0;
+        try {
+            for(int i = keys.length - 1; i >= 0; i--) {
+                if(mag.count == 0) { refill(mag); }
+                int n = mag.nodes[--mag.count];
+                key[n] = keys[i];
+                next[n] = prev;
+                prev = n;
+            }
+        }
+        catch(IllegalStateException e) {
+            // Give back the part of the chain that was already built, which may be longer
+            // than the magazine holds, to the shared stack.
+            pushChain(prev);
+            throw e;
+        }
+        allocatedNodeCount.add(keys.length);
+        return prev;
+    }
+
+    /**
+     * Releases the entire chain of nodes from the starting node. If you want to
+     * release just one node, set its successor to 0 before calling this method.
+     * @param n The first node of the chain to release.
+     * @return The number of nodes that were released.
+     */
+    public int release(int n) {
+        Magazine mag = magazines.get();
+        int count = 0;
+        try {
+            while(n != 0) {
+                verifyIndex(n);
+                int m = next[n];
+                if(mag.count == mag.nodes.length) { handOff(mag); }
+                mag.nodes[mag.count++] = n;
+                n = m;
+                count++;
+            }
+        }
+        finally {
+            allocatedNodeCount.add(-count);
+        }
+        return count;
+    }
+
+    /**
+     * Returns all nodes cached by the calling thread to the shared pool. This is never
+     * needed for correctness, since other threads take the nodes of a magazine when the
+     * shared pool runs out, but it saves them the trouble when a thread stops using the
+     * pool for a long time.
+     */
+    public void flush() {
+        Magazine mag = magazines.get();
+        while(mag.count > 0) {
+            push(chainBatch(mag, Math.min(batchSize, mag.count)));
+        }
+        int spare = mag.spare.getAndSet(0);
+        if(spare != 0) { push(spare); }
+    }
+
+    // Chain the topmost nodes of the magazine into a batch and return its first node.
+    private int chainBatch(Magazine mag, int size) {
+        int first = mag.nodes[mag.count - 1];
+        int last = first;
+        for(int i = 2; i <= size; i++) {
+            int n = mag.nodes[mag.count - i];
+            next[last] = n;
+            last = n;
+        }
+        next[last] = 0;
+        mag.count -= size;
+        return first;
+    }
+
+    // Publish a batch from the full magazine of the calling thread as its spare, where
+    // other threads can take it, and push the previous spare, if any, to the shared stack.
+    private void handOff(Magazine mag) {
+        int old = mag.spare.getAndSet(chainBatch(mag, batchSize));
+        if(old != 0) { push(old); }
+    }
+
+    // Move the batch chained from the given node into the magazine.
+    private static void load(Magazine mag, int first, int[] next) {
+        for(int n = first; n != 0; n = next[n]) {
+            mag.nodes[mag.count++] = n;
+        }
+    }
+
+    // Cut the chain from n into batches of at most batchSize nodes and push them all to the
+    // shared stack.
+    private void pushChain(int n) {
+        while(n != 0) {
+            int last = n;
+            for(int i = 1; i < batchSize && next[last] != 0; i++) { last = next[last]; }
+            int rest = next[last];
+            next[last] = 0;
+            push(n);
+            n = rest;
+        }
+    }
+
+    // Push the batch chained from the given node to the shared stack.
+    private void push(int first) {
+        while(true) {
+            long top = batchStack.get();
+            key[first] = (int)top;
+            if(batchStack.compareAndSet(top, (((top >>> 32) + 1) << 32) | first)) { return; }
+        }
+    }
+
+    // Fill the empty magazine of the calling thread with its own spare batch, or one batch
+    // from the shared stack, or fresh nodes, or failing all these, with the spare batches
+    // of other magazines and the nodes of the magazines of terminated threads.
+    private void refill(Magazine mag) {
+        int spare = mag.spare.getAndSet(0);
+        if(spare != 0) {
+            load(mag, spare, next);
+            return;
+        }
+        while(true) {
+            while(true) {
+                long top = batchStack.get();
+                int first = (int)top;
+                if(first == 0) { break; }
+                // If another thread pops this batch first, the tag has changed and the CAS
+                // below fails, so a stale read of the link here is harmless.
+                int below = key[first];
+                if(batchStack.compareAndSet(top, (((top >>> 32) + 1) << 32) | below)) {
+                    load(mag, first, next);
+                    return;
+                }
+            }
+            if(highWater.get() < key.length) {
+                int start = highWater.getAndAdd(batchSize);
+                int end = (int)Math.min((long)start + batchSize, key.length);
+                for(int n = end - 1; n >= start; n--) {
+                    mag.nodes[mag.count++] = n;
+                }
+                if(mag.count > 0) { return; }
+            }
+            if(steal(mag)) { return; }
+            // Nodes returned to the shared stack while the other magazines were searched
+            // are worth another round.
+            if((int)batchStack.get() == 0) {
+                throw new IllegalStateException("No more space for nodes available.");
+            }
+        }
+    }
+
+    // Take a spare batch from another magazine into the given empty one. The magazines of
+    // terminated threads are claimed and emptied to the shared stack on the way, and then
+    // dropped from the registry. Returns true if the magazine received nodes.
+    private boolean steal(Magazine mag) {
+        for(Magazine other: registry) {
+            if(other == mag) { continue; }
+            int spare = other.spare.getAndSet(0);
+            if(spare != 0) {
+                load(mag, spare, next);
+                return true;
+            }
+            // Once the owner is seen terminated, all its writes to the magazine are visible.
+            Thread owner = other.owner.get();
+            if((owner == null || !owner.isAlive()) && other.claimed.compareAndSet(false, true)) {
+                while(other.count > 0) {
+                    push(chainBatch(other, Math.min(batchSize, other.count)));
+                }
+                registry.remove(other);
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * A handle to a chain of the static IntList that keeps track of the first and last
+ * node of the chain and of its length. With these at hand, appending a node or another
+ * chain and asking for the size take constant time, where the bare first node of a
+ * chain would need a walk to the end. Releasing the whole chain also takes constant
+ * time when the static pool is an {@code UncheckedIntListPool}; the checked pool
+ * verifies every node it releases, so there it takes time linear in the length.
+ *
+ * The handle is only correct as long as the chain is changed through it. Code that
+ * relinks the nodes directly should take the chain out with {@code detach} first, and
+ * wrap the result in a new handle afterwards.
+ */
+public class IntChain {
+
+    private int head, tail, length;
+
+    /**
+     * Creates a handle to a new empty chain.
+     */
+    public IntChain() { }
+
+    /**
+     * Creates a handle to a new chain holding the given keys in order.
+     * @param keys The keys of the chain.
+     */
+    public IntChain(int[] keys) {
+        head = IntList.allocate(keys);
+        length = keys.length;
+        tail = IntChains.last(head);
+    }
+
+    /**
+     * Creates a handle to an existing chain. This walks the chain once to find its last
+     * node and its length.
+     * @param n The first node of the chain, 0 for an empty chain.
+     * @return The handle to the chain.
+     */
+    public static IntChain of(int n) {
+        IntChain c = new IntChain();
+        c.head = n;
+        if(n != 0) {
+            c.length = 1;
+            for(int m = IntList.getNext(n); m != 0; m = IntList.getNext(m)) {
+                n = m;
+                c.length++;
+            }
+        }
+        c.tail = n;
+        return c;
+    }
+
+    /**
+     * Returns the first node of the chain.
+     * @return The first node of the chain, 0 if the chain is empty.
+     */
+    public int getHead() {
+        return head;
+    }
+
+    /**
+     * Returns the last node of the chain.
+     * @return The last node of the chain, 0 if the chain is empty.
+     */
+    public int getTail() {
+        return tail;
+    }
+
+    /**
+     * Returns the number of nodes in the chain.
+     * @return The length of the chain.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Checks whether the chain is empty.
+     * @return True if the chain has no nodes.
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Allocates a node with the given key at the end of the chain.
+     * @param k The key of the new node.
+     * @return The new node.
+     */
+    public int append(int k) {
+        int n = IntList.allocate(k);
+        if(tail == 0) { head = n; } else { IntList.setNext(tail, n); }
+        tail = n;
+        length++;
+        return n;
+    }
+
+    /**
+     * Allocates a node with the given key at the front of the chain.
+     * @param k The key of the new node.
+     * @return The new node.
+     */
+    public int prepend(int k) {
+        int n = IntList.allocate(k);
+        IntList.setNext(n, head);
+        if(tail == 0) { tail = n; }
+        head = n;
+        length++;
+        return n;
+    }
+
+    /**
+     * Moves all nodes of another chain to the end of this chain. The other chain is empty
+     * afterwards.
+     * @param other The chain to append, which must not be this chain.
+     */
+    public void concat(IntChain other) {
+        if(other == this) {
+            throw new IllegalArgumentException("A chain cannot be appended to itself.");
+        }
+        if(other.length == 0) { return; }
+        head = IntChains.concat(head, tail, other.head);
+        tail = other.tail;
+        length += other.length;
+        other.clear();
+    }
+
+    /**
+     * Removes the first node of the chain and releases it.
+     * @return The key of the removed node.
+     */
+    public int removeFirst() {
+        if(head == 0) {
+            throw new IllegalStateException("Cannot remove from an empty chain.");
+        }
+        int n = head;
+        int k = IntList.getKey(n);
+        head = IntList.setNext(n, 0);
+        IntList.release(n);
+        if(head == 0) { tail = 0; }
+        length--;
+        return k;
+    }
+
+    /**
+     * Sorts the chain with {@code IntListMethods.sort}.
+     */
+    public void sort() {
+        head = IntListMethods.sort(head);
+        tail = IntChains.last(head);
+    }
+
+    /**
+     * Releases all nodes of the chain to the pool. This takes constant time if the pool
+     * is unchecked, and time linear in the length of the chain if it is checked. The
+     * chain is empty afterwards.
+     * @return The number of nodes that were released.
+     */
+    public int releaseAll() {
+        int count = length;
+        if(count > 0) { IntList.release(head, tail, count); }
+        clear();
+        return count;
+    }
+
+    /**
+     * Takes the nodes out of this handle, for code that works on the bare chain. The
+     * handle is empty afterwards and the caller becomes responsible for the nodes.
+     * @return The first node of the chain.
+     */
+    public int detach() {
+        int n = head;
+        clear();
+        return n;
+    }
+
+    private void clear() {
+        head = tail = length = 0;
+    }
+
+    @Override
+    public String toString() {
+        return IntList.toString(head);
+    }
+}
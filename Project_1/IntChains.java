@@ -0,0 +1,207 @@
+import java.util.function.IntPredicate;
+
+/**
+ * Operations on whole chains of the static IntList. Every operation walks its chains
+ * at most once and works by relinking the existing nodes, so none of them allocates
+ * nodes or objects or changes any key. Nodes that an operation removes from a chain
+ * are returned to the pool with a single splice.
+ *
+ * Operations that cut a chain terminate every part they produce, and like the methods
+ * of IntList they return the first node of the resulting chain, 0 for an empty chain.
+ */
+public class IntChains {
+
+    private IntChains() { }
+
+    /**
+     * Returns the last node of the chain from the given node.
+     * @param n The first node of the chain.
+     * @return The last node of the chain, 0 if the chain is empty.
+     */
+    public static int last(int n) {
+        if(n == 0) { return 0; }
+        for(int m = IntList.getNext(n); m != 0; m = IntList.getNext(m)) { n = m; }
+        return n;
+    }
+
+    /**
+     * Appends the chain {@code b} to the chain {@code a} in constant time, given the last
+     * node of {@code a}.
+     * @param a The first node of the first chain, 0 if it is empty.
+     * @param tail The last node of the first chain, 0 if it is empty.
+     * @param b The first node of the second chain.
+     * @return The first node of the combined chain.
+     */
+    public static int concat(int a, int tail, int b) {
+        if(a == 0) { return b; }
+        IntList.setNext(tail, b);
+        return a;
+    }
+
+    /**
+     * Merges two chains sorted in ascending order of their keys into one sorted chain.
+     * The merge is stable: of two equal keys, the node from {@code a} comes first.
+     * @param a The first node of the first sorted chain.
+     * @param b The first node of the second sorted chain.
+     * @return The first node of the merged chain.
+     */
+    public static int mergeSorted(int a, int b) {
+        if(a == 0) { return b; }
+        if(b == 0) { return a; }
+        return IntListMethods.mergeRuns(a, b);
+    }
+
+    /**
+     * Merges any number of chains sorted in ascending order of their keys into one sorted
+     * chain. The caller's array is used as a binary min-heap of the current first nodes of
+     * the chains, ordered by their keys, so the merge needs no memory of its own and takes
+     * O(log k) key comparisons per node for k chains. The contents of the array are
+     * unspecified afterwards. Unlike merging two chains, the order of equal keys from
+     * different chains is not preserved.
+     * @param heads The first nodes of the sorted chains, where 0 stands for an empty chain.
+     * @param count The number of chains in the array.
+     * @return The first node of the merged chain.
+     */
+    public static int mergeSorted(int[] heads, int count) {
+        int size = 0;
+        for(int i = 0; i < count; i++) {// move the empty chains out of the heap
+            if(heads[i] != 0) { heads[size++] = heads[i]; }
+        }
+        for(int i = size / 2 - 1; i >= 0; i--) { siftDown(heads, size, i); }
+        int head = 0, tail = 0;
+        while(size > 0) {
+            int n = heads[0];
+            if(tail == 0) { head = n; } else { IntList.setNext(tail, n); }
+            tail = n;
+            int m = IntList.getNext(n);
+            if(m != 0) { heads[0] = m; }
+            else { heads[0] = heads[--size]; }
+            if(size > 0) { siftDown(heads, size, 0); }
+        }
+        return head;
+    }
+
+    // Restore the heap order of the first size nodes of the array below position i.
+    private static void siftDown(int[] heap, int size, int i) {
+        int n = heap[i], k = IntList.getKey(n);
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size) { break; }
+            int c = heap[child], kc = IntList.getKey(c);
+            if(child + 1 < size) {
+                int d = heap[child + 1], kd = IntList.getKey(d);
+                if(kd < kc) { child++; c = d; kc = kd; }
+            }
+            if(k <= kc) { break; }
+            heap[i] = c;
+            i = child;
+        }
+        heap[i] = n;
+    }
+
+    /**
+     * Cuts the chain after its first {@code index} nodes.
+     * @param n The first node of the chain.
+     * @param index Number of nodes that remain in the first part.
+     * @return The first node of the second part, 0 if the chain has at most {@code index}
+     * nodes, and {@code n} itself if {@code index} is zero or negative.
+     */
+    public static int splitAt(int n, int index) {
+        if(n == 0 || index <= 0) { return n; }
+        for(int i = 1; i < index; i++) {
+            n = IntList.getNext(n);
+            if(n == 0) { return 0; }
+        }
+        return IntList.setNext(n, 0);
+    }
+
+    /**
+     * Cuts the chain before its first node whose key is at least {@code k}. For a chain
+     * sorted in ascending order, this separates the keys below {@code k} from the rest.
+     * @param n The first node of the chain.
+     * @param k The key at which to cut.
+     * @return The first node of the second part, 0 if every key is less than {@code k},
+     * and {@code n} itself if the first key is already at least {@code k}.
+     */
+    public static int splitAtKey(int n, int k) {
+        if(n == 0 || IntList.getKey(n) >= k) { return n; }
+        int m = IntList.getNext(n);
+        while(m != 0 && IntList.getKey(m) < k) {
+            n = m;
+            m = IntList.getNext(m);
+        }
+        if(m != 0) { IntList.setNext(n, 0); }
+        return m;
+    }
+
+    /**
+     * Removes all but the first node of every run of equal keys from a sorted chain,
+     * which leaves each key only once. The removed nodes are released with one splice.
+     * @param n The first node of the sorted chain.
+     * @return The first node of the resulting chain, which is always {@code n}.
+     */
+    public static int dedupeSorted(int n) {
+        if(n == 0) { return 0; }
+        int tail = n, k = IntList.getKey(n);
+        int gone = 0, goneTail = 0, goneCount = 0;
+        int prev = n, m = IntList.getNext(n);
+        while(m != 0) {
+            int km = IntList.getKey(m);
+            int next = IntList.getNext(m);
+            if(km == k) {
+                if(goneTail == 0) { gone = m; }
+                else if(goneTail != prev) { IntList.setNext(goneTail, m); }
+                goneTail = m;
+                goneCount++;
+            }
+            else {
+                if(tail != prev) { IntList.setNext(tail, m); }
+                tail = m;
+                k = km;
+            }
+            prev = m;
+            m = next;
+        }
+        if(tail != prev) { IntList.setNext(tail, 0); }
+        if(goneTail != 0) {
+            if(goneTail != prev) { IntList.setNext(goneTail, 0); }
+            IntList.release(gone, goneTail, goneCount);
+        }
+        return n;
+    }
+
+    /**
+     * Splits the chain into the nodes whose keys satisfy the predicate and the rest,
+     * keeping the original order within both parts.
+     * @param n The first node of the chain.
+     * @param p The predicate that selects the nodes of the first part.
+     * @param parts Array whose first two elements receive the first nodes of the part
+     * that satisfies the predicate and of the part that does not.
+     * @return The number of nodes in the first part.
+     */
+    public static int partition(int n, IntPredicate p, int[] parts) {
+        int yes = 0, yesTail = 0, no = 0, noTail = 0, count = 0;
+        int prev = 0;
+        while(n != 0) {
+            int m = IntList.getNext(n);
+            if(p.test(IntList.getKey(n))) {
+                if(yesTail == 0) { yes = n; }
+                else if(yesTail != prev) { IntList.setNext(yesTail, n); }
+                yesTail = n;
+                count++;
+            }
+            else {
+                if(noTail == 0) { no = n; }
+                else if(noTail != prev) { IntList.setNext(noTail, n); }
+                noTail = n;
+            }
+            prev = n;
+            n = m;
+        }
+        if(yesTail != 0 && yesTail != prev) { IntList.setNext(yesTail, 0); }
+        if(noTail != 0 && noTail != prev) { IntList.setNext(noTail, 0); }
+        parts[0] = yes;
+        parts[1] = no;
+        return count;
+    }
+}
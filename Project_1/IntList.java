@@ -1,58 +1,49 @@
 // VERSION SEPTEMBER 29, 2018
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
 public class IntList {
     
-    // The space allocated for the arrays that store the nodes. Each node will
-    // consist of an int key and a successor, stored in two arrays to minimize
-    // memory overhead.
-    private static int SPACE;
-    // The keys stored in the individual nodes.
-    private static int[] key;
-    // The successors of the individual nodes. Value 0 denotes no successor.
-    // Nonnegative value means that the node has been allocated, whereas a
-    // negative value means that the node is part of the free list, with
-    // the negation of the value being the successor node index in the free list.
-    private static int[] next;
-    
-    // Position of the first free node.
-    private static int freeHead;
-    
-    // Call counts for various methods.
-    private static long getKeyCount = 0;
-    private static long getNextCount = 0;
-    private static long setKeyCount = 0;
-    private static long setNextCount = 0;
-    
-    // Current number of allocated nodes in the list
-    private static int allocatedNodeCount = 0;
+    // The simulated node space. All static methods of this class operate on this
+    // single pool, so that the course projects can keep using the static interface.
+    // Code that needs several independent node spaces should use IntListPool directly.
+    private static IntListPool pool;
     
     /** 
      * Returns the current number of allocated nodes.
      * @return The current number of allocated nodes.
      */
     public static int getAllocatedNodeCount() {
-        return allocatedNodeCount;
+        return pool.getAllocatedNodeCount();
     }    
         
     /**
      * Should be called once in the beginning. Initializes the simulated node space.
-     * @param maxn Number of total nodes to allocate space for initially.
+     * The node space grows automatically if more than {@code maxn} nodes are needed.
+     * @param maxn Number of nodes expected to be in use at the same time.
      */
     public static void initialize(int maxn) {
-        SPACE = maxn;
-        key = new int[SPACE];
-        next = new int[SPACE];
-        freeHead = 1;
-        for(int i = 1; i < SPACE - 1; i++) {
-            next[i] = -(i+1);
-        }
+        pool = new IntListPool(maxn);
     }
     
-    // Verify that the node n really exists and has been allocated for use.
-    private static void verifyIndex(int n) {
-        if(n < 1 || n >= SPACE || next[n] < 0) {
-            throw new IllegalStateException("Node " + n + " is not currently allocated for use.");
-        }
+    /**
+     * Initializes the simulated node space in either checked or unchecked mode. The checked
+     * mode verifies every node access and counts the calls for {@code printStatistics}. The
+     * unchecked mode skips both, for code that has already been debugged.
+     * @param maxn Number of nodes expected to be in use at the same time.
+     * @param checked Whether the node accesses are verified and counted.
+     */
+    public static void initialize(int maxn, boolean checked) {
+        pool = checked ? new IntListPool(maxn) : new UncheckedIntListPool(maxn);
+    }
+    
+    /**
+     * Returns the node pool that the static methods of this class operate on.
+     * @return The current node pool.
+     */
+    public static IntListPool getPool() {
+        return pool;
     }
     
     /**
@@ -61,9 +52,7 @@ public class IntList {
      * @return The key of node {@code n}.
      */
     public static int getKey(int n) {
-        verifyIndex(n);
-        getKeyCount++;
-        return key[n];
+        return pool.getKey(n);
     }
     /**
      * Returns the successor of node {@code n}.
@@ -71,9 +60,7 @@ public class IntList {
      * @return The successor of node {@code n}.
      */
     public static int getNext(int n) {
-        verifyIndex(n);
-        getNextCount++;
-        return next[n];        
+        return pool.getNext(n);
     }
     
     /**
@@ -82,14 +69,10 @@ public class IntList {
      * @return The previous key of node {@code n} before this assignment.
      */
     public static int setKey(int n, int k) {
-        verifyIndex(n);
-        if(lockValue != 0) {
+        if(lockValue.get() != 0) {
             throw new IllegalStateException("Trying to modify a key while keys are locked.");
         }
-        setKeyCount++;
-        int result = key[n];
-        key[n] = k;
-        return result;
+        return pool.setKey(n, k);
     }
     
     /**
@@ -98,11 +81,7 @@ public class IntList {
      * @return The previous successor of node {@code n} before this assignment.
      */
     public static int setNext(int n, int m) {
-        verifyIndex(n);
-        setNextCount++;
-        int result = next[n];
-        next[n] = m;
-        return result;
+        return pool.setNext(n, m);
     }
     
     /**
@@ -111,17 +90,7 @@ public class IntList {
      * @return The index of the new allocated node.
      */
     public static int allocate(int k) {
-        if(freeHead > 0) {
-            int n = freeHead;
-            freeHead = -next[freeHead];
-            next[n] = 0;
-            key[n] = k;
-            allocatedNodeCount++;
-            return n;
-        }
-        else {
-            throw new IllegalStateException("No more space for nodes available.");
-        }
+        return pool.allocate(k);
     }
     
     /**
@@ -130,13 +99,16 @@ public class IntList {
      * @return The index of the first node of the chain.
      */
     public static int allocate(int[] keys) {
-        int prev = 0;
-        for(int i = keys.length - 1; i >= 0; i--) {
-            int n = allocate(keys[i]);
-            setNext(n, prev);
-            prev = n;
-        }
-        return prev;
+        return pool.allocate(keys);
+    }
+    
+    /**
+     * Allocates a chain of nodes for the keys produced by the given stream, in order.
+     * @param keys The stream of keys to convert into a linked list.
+     * @return The index of the first node of the chain.
+     */
+    public static int allocate(IntStream keys) {
+        return pool.allocate(keys);
     }
     
     /**
@@ -146,17 +118,20 @@ public class IntList {
      * @return The number of nodes that were released.
      */
     public static int release(int n) {
-        int count = 0;
-        while(n != 0) {
-            verifyIndex(n);            
-            int m = next[n];
-            next[n] = -freeHead;            
-            freeHead = n;
-            n = m;
-            allocatedNodeCount--;
-            count++;            
-        }
-        return count;
+        return pool.release(n);
+    }
+    
+    /**
+     * Releases a chain of known tail and length, in constant time if the pool is
+     * unchecked. See
+     * {@link IntListPool#release(int, int, int)} for the details.
+     * @param head The first node of the chain to release.
+     * @param tail The last node of the chain to release.
+     * @param count The number of nodes in the chain.
+     * @return The number of nodes that were released.
+     */
+    public static int release(int head, int tail, int count) {
+        return pool.release(head, tail, count);
     }
     
     // The rest of this class is for demonstration purposes. Read through these methods until
@@ -242,28 +217,43 @@ public class IntList {
      * For debugging purposes, output the counts of how many times each method has been called.
      */
     public static void printStatistics() {        
-        System.out.print("Method call counts: getKey " + getKeyCount);
-        System.out.print(", setKey " + setKeyCount);
-        System.out.print(", getNext " + getNextCount);
-        System.out.println(", setNext " + setNextCount + ".");
+        pool.printStatistics();
     }
     
     // Locking mechanism to enforce that keys cannot be reassigned during sorting, but
     // the sorting algorithm is forced to rearrange the actual nodes. Prevents some
-    // solutions that would here be considered unsportsmanlike for this problem.
-    private static int lockValue = 0;
+    // solutions that would here be considered unsportsmanlike for this problem. This
+    // freezes all keys at once; freeze and unfreeze do the same for a single chain.
+    private static final AtomicInteger lockValue = new AtomicInteger();
     
     public static void lockKeys(int value) {
-        if(lockValue == 0) { lockValue = value; }
+        lockValue.compareAndSet(0, value);
     }
     
     public static void unlockKeys(int value) {
-        if(lockValue == value) { lockValue = 0; }
-        else {
+        if(!lockValue.compareAndSet(value, 0)) {
             throw new IllegalStateException("Cheater! Trying to unlock keys during sorting!");
         }
     }
     
+    /**
+     * Freezes the keys of the chain from the given node, see {@code IntListPool.freeze}.
+     * @param n The first node of the chain to freeze.
+     * @return The stamp that identifies this freeze.
+     */
+    public static long freeze(int n) {
+        return pool.freeze(n);
+    }
+    
+    /**
+     * Ends a freeze started by {@code freeze}.
+     * @param n The first node of the frozen chain.
+     * @param stamp The stamp returned by {@code freeze}.
+     */
+    public static void unfreeze(int n, long stamp) {
+        pool.unfreeze(n, stamp);
+    }
+    
     public static void main(String[] args) {
         IntList.initialize(100); // Keep it small in this demo...
         int[] data = {17, 42, 99, 16, -5, 107, -3, 92};
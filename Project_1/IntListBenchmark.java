@@ -0,0 +1,480 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+public class IntListBenchmark {
+
+    // Number of nodes in each chain allocated by the concurrent workers.
+    private static final int CHAIN = 64;
+
+    // Each worker repeatedly allocates a chain and releases it again. Returns the
+    // measured throughput in allocated nodes per millisecond.
+    private static long concurrentRound(int threads, int rounds, boolean shared) throws InterruptedException {
+        final ConcurrentIntListPool pool = new ConcurrentIntListPool(threads * CHAIN * 8 + 1, CHAIN);
+        final IntListPool lockedPool = new IntListPool(threads * CHAIN * 8);
+        final int[] keys = new int[CHAIN];
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for(int i = 0; i < rounds; i++) {
+                    if(shared) {
+                        int n;
+                        synchronized(lockedPool) { n = lockedPool.allocate(keys); }
+                        synchronized(lockedPool) { lockedPool.release(n); }
+                    }
+                    else {
+                        pool.release(pool.allocate(keys));
+                    }
+                }
+                if(!shared) { pool.flush(); }
+            });
+        }
+        long startTime = System.nanoTime();
+        for(Thread w: workers) { w.start(); }
+        for(Thread w: workers) { w.join(); }
+        long endTime = System.nanoTime();
+        return (long)threads * rounds * CHAIN * 1000000L / Math.max(1, endTime - startTime);
+    }
+
+    // Compare the concurrent pool against a single pool guarded by a lock for each thread
+    // count from 1 up to the given maximum.
+    public static void concurrent(int maxThreads, int rounds) throws InterruptedException {
+        // Warm up both variants before measuring anything.
+        concurrentRound(maxThreads, rounds, false);
+        concurrentRound(maxThreads, rounds, true);
+        System.out.println("threads  concurrent(nodes/ms)  synchronized(nodes/ms)");
+        for(int threads = 1; threads <= maxThreads; threads *= 2) {
+            long c = concurrentRound(threads, rounds, false);
+            long s = concurrentRound(threads, rounds, true);
+            System.out.printf("%7d  %20d  %22d%n", threads, c, s);
+        }
+    }
+
+    // Resident set size of this process in kilobytes, or -1 where /proc is not available.
+    private static long residentKilobytes() {
+        try {
+            for(String line: Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if(line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        }
+        catch(IOException e) { }
+        return -1;
+    }
+
+    // Measure the time and resident memory needed to initialize a pool of the given size
+    // and to allocate its first chain.
+    public static void startup(int maxn) {
+        long rssBefore = residentKilobytes();
+        long startTime = System.nanoTime();
+        IntList.initialize(maxn);
+        int n = IntList.allocate(new int[] {1, 2, 3});
+        long endTime = System.nanoTime();
+        long rssAfter = residentKilobytes();
+        IntList.release(n);
+        System.out.printf("initialize(%d): %.3f ms, resident memory grew by %d kB%n",
+            maxn, (endTime - startTime) / 1e6, rssAfter - rssBefore);
+    }
+
+    // The command that runs the given benchmark arguments in a fresh JVM with the same
+    // class path and JVM options, such as the heap size, as this one.
+    private static List<String> command(String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("IntListBenchmark");
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    // Run the given benchmark arguments in a fresh JVM, so that the classes loaded and
+    // the code compiled for one configuration cannot affect the measurement of another.
+    private static void fork(String... args) throws InterruptedException {
+        try {
+            new ProcessBuilder(command(args)).inheritIO().start().waitFor();
+        }
+        catch(IOException e) {
+            System.out.println("Unable to start benchmark JVM: " + e);
+        }
+    }
+
+    // Run the given benchmark arguments in a fresh JVM like fork, and return the last line
+    // that the JVM printed, or null if it printed nothing.
+    private static String forkResult(String... args) throws InterruptedException {
+        String last = null;
+        try {
+            Process process = new ProcessBuilder(command(args)).redirectErrorStream(true).start();
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                for(String line = reader.readLine(); line != null; line = reader.readLine()) { last = line; }
+            }
+            process.waitFor();
+        }
+        catch(IOException e) {
+            System.out.println("Unable to start benchmark JVM: " + e);
+        }
+        return last;
+    }
+
+    // Time the given operation over several rounds after warming it up, and return the
+    // best observed time per node in nanoseconds.
+    private static double timePerNode(int nodes, int rounds, Runnable op) {
+        for(int i = 0; i < rounds; i++) { op.run(); }
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < rounds; i++) {
+            long startTime = System.nanoTime();
+            op.run();
+            best = Math.min(best, System.nanoTime() - startTime);
+        }
+        return (double)best / nodes;
+    }
+
+    private static int head;
+    private static long sink;
+
+    // Compare traversal, reverse and removeFirst on the static IntList in checked or
+    // unchecked mode. Each mode should be measured in its own JVM, see fork.
+    public static void modes(int size, boolean checked, int rounds) {
+        Random rng = new Random(size);
+        int[] data = new int[size];
+        for(int i = 0; i < size; i++) { data[i] = rng.nextInt(Integer.MAX_VALUE); }
+        IntList.initialize(size + 1, checked);
+        head = IntList.allocate(data);
+        double traverse = timePerNode(size, rounds, () -> {
+            long sum = 0;
+            for(int n = head; n != 0; n = IntList.getNext(n)) { sum += IntList.getKey(n); }
+            sink += sum;
+        });
+        double reverse = timePerNode(size, rounds, () -> head = IntList.reverse(head));
+        // The key is never present, so every call walks the whole chain.
+        double removeFirst = timePerNode(size, rounds, () -> head = IntList.removeFirst(head, -1));
+        System.out.printf("%-9s  traverse %6.2f ns/node  reverse %6.2f ns/node  removeFirst %6.2f ns/node%n",
+            checked ? "checked" : "unchecked", traverse, reverse, removeFirst);
+    }
+
+    private static IntListPool pool;
+
+    // Build a chain whose nodes are scattered randomly over the pool, as happens after
+    // long allocate and release churn, and compare its traversal before and after compaction.
+    public static void compact(int size, int rounds) {
+        Random rng = new Random(size);
+        pool = new UncheckedIntListPool(size + 1);
+        int[] nodes = new int[size];
+        for(int i = 0; i < size; i++) { nodes[i] = pool.allocate(0); }
+        for(int i = size - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int tmp = nodes[i]; nodes[i] = nodes[j]; nodes[j] = tmp;
+        }
+        for(int n: nodes) { pool.release(n); }
+        head = 0;
+        for(int i = 0; i < size; i++) {
+            int n = pool.allocate(rng.nextInt());
+            pool.setNext(n, head);
+            head = n;
+        }
+        Runnable traverse = () -> {
+            long sum = 0;
+            for(int n = head; n != 0; n = pool.getNext(n)) { sum += pool.getKey(n); }
+            sink += sum;
+        };
+        double before = timePerNode(size, rounds, traverse);
+        long startTime = System.nanoTime();
+        head = pool.compact(new int[] {head})[0];
+        long endTime = System.nanoTime();
+        double after = timePerNode(size, rounds, traverse);
+        System.out.printf("size %d: traverse %.2f ns/node scattered, %.2f ns/node compacted, compaction %.1f ms%n",
+            size, before, after, (endTime - startTime) / 1e6);
+    }
+
+    // Time one sort of a random chain of the given size, returning milliseconds.
+    private static double timeSort(int size, boolean checked, Random rng, IntUnaryOperator sort) {
+        int[] data = new int[size];
+        for(int i = 0; i < size; i++) { data[i] = rng.nextInt(); }
+        IntList.initialize(size + 1, checked);
+        int n = IntList.allocate(data);
+        long startTime = System.nanoTime();
+        n = sort.applyAsInt(n);
+        long endTime = System.nanoTime();
+        IntList.release(n);
+        return (endTime - startTime) / 1e6;
+    }
+
+    // Compare the relinking merge and radix sorts against the array-based merge sort.
+    public static void sort(int size, boolean checked, int rounds) {
+        Random rng = new Random(size);
+        double array = Double.MAX_VALUE, merge = Double.MAX_VALUE, radix = Double.MAX_VALUE;
+        for(int i = 0; i < rounds; i++) {
+            array = Math.min(array, timeSort(size, checked, rng, IntListMethods::sortByArray));
+            merge = Math.min(merge, timeSort(size, checked, rng, IntListMethods::mergeSort));
+            radix = Math.min(radix, timeSort(size, checked, rng, IntListMethods::radixSort));
+        }
+        System.out.printf("size %d, %s: array merge sort %.1f ms, natural merge sort %.1f ms, radix sort %.1f ms%n",
+            size, checked ? "checked" : "unchecked", array, merge, radix);
+    }
+
+    // Measure the parallel sort with 1, 2, 4, ... worker threads up to the given maximum.
+    public static void parallelSort(int size, boolean checked, int maxThreads, int rounds) {
+        Random rng = new Random(size);
+        double base = 0;
+        for(int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool workers = new ForkJoinPool(threads);
+            double best = Double.MAX_VALUE;
+            for(int i = 0; i < rounds; i++) {
+                best = Math.min(best, timeSort(size, checked, rng, n -> IntListMethods.parallelSort(n, workers)));
+            }
+            workers.shutdown();
+            if(threads == 1) { base = best; }
+            System.out.printf("size %d, %d threads: %.1f ms, speedup %.2f%n", size, threads, best, base / best);
+        }
+    }
+
+    // Time one filtering of a fresh chain built by the given function, returning nanoseconds.
+    private static long timeFilter(IntSupplier build, IntUnaryOperator filter) {
+        int n = build.getAsInt();
+        long startTime = System.nanoTime();
+        head = filter.applyAsInt(n);
+        return System.nanoTime() - startTime;
+    }
+
+    // Compare removing every third key with removeIf on the IntList chain, and with the
+    // predicate and the specialized divisibility filter on an unrolled chain.
+    public static void filter(int size, boolean checked, int rounds) {
+        Random rng = new Random(size);
+        int[] data = new int[size];
+        for(int i = 0; i < size; i++) { data[i] = rng.nextInt(); }
+        IntList.initialize(size + 1, checked);
+        UnrolledIntList unrolled = new UnrolledIntList(size / 8 + 1);
+        IntSupplier[] builds = { () -> IntList.allocate(data), () -> unrolled.allocate(data), () -> unrolled.allocate(data) };
+        IntUnaryOperator[] filters = {
+            n -> IntListMethods.removeIf(n, k -> k % 3 == 0),
+            n -> unrolled.removeIf(n, k -> k % 3 == 0),
+            n -> unrolled.removeIfDivisible(n, 3)
+        };
+        double[] best = new double[filters.length];
+        for(int f = 0; f < filters.length; f++) {
+            best[f] = Double.MAX_VALUE;
+            for(int i = 0; i < 2 * rounds; i++) {
+                long time = timeFilter(builds[f], filters[f]);
+                if(i >= rounds) { best[f] = Math.min(best[f], (double)time / size); }
+                if(f == 0) { IntList.release(head); } else { unrolled.release(head); }
+            }
+        }
+        System.out.printf("size %d, %s: IntList removeIf %.2f ns/key, unrolled removeIf %.2f ns/key, "
+            + "unrolled removeIfDivisible %.2f ns/key%n", size, checked ? "checked" : "unchecked", best[0], best[1], best[2]);
+    }
+
+    // Compare searching a sorted chain of the given size by walking it against searching
+    // it through a skip list index.
+    public static void skipList(int size, int lookups) {
+        Random rng = new Random(size);
+        int[] data = new int[size];
+        for(int i = 0; i < size; i++) { data[i] = rng.nextInt(); }
+        Arrays.sort(data);
+        pool = new UncheckedIntListPool(size + 1);
+        head = pool.allocate(data);
+        long startTime = System.nanoTime();
+        SkipListIndex index = new SkipListIndex(pool, head);
+        double build = (System.nanoTime() - startTime) / 1e6;
+        int walks = Math.max(1, lookups / 1000);
+        startTime = System.nanoTime();
+        for(int i = 0; i < walks; i++) {
+            int k = rng.nextInt(), n = head;
+            while(n != 0 && pool.getKey(n) < k) { n = pool.getNext(n); }
+            sink += n;
+        }
+        double linear = (double)(System.nanoTime() - startTime) / walks;
+        for(int i = 0; i < lookups; i++) { sink += index.ceiling(rng.nextInt()); }
+        startTime = System.nanoTime();
+        for(int i = 0; i < lookups; i++) { sink += index.ceiling(rng.nextInt()); }
+        double indexed = (double)(System.nanoTime() - startTime) / lookups;
+        System.out.printf("size %d: index built in %.1f ms, search %.0f ns walking, %.0f ns indexed%n",
+            size, build, linear, indexed);
+    }
+
+    // Keys of the given distribution for the benchmark suite. None of them is negative,
+    // so that removeFirst(n, -1) always walks the whole chain.
+    private static int[] suiteKeys(String dist, int size, Random rng) {
+        int[] data = new int[size];
+        for(int i = 0; i < size; i++) {
+            switch(dist) {
+                case "random": data[i] = rng.nextInt(Integer.MAX_VALUE); break;
+                case "sorted": data[i] = i; break;
+                case "reversed": data[i] = size - i; break;
+                case "duplicates": data[i] = rng.nextInt(16); break;
+                default: throw new IllegalArgumentException("Unknown key distribution " + dist);
+            }
+        }
+        return data;
+    }
+
+    // Prepare the static pool, all of whose nodes must be free, so that it hands out its
+    // nodes in the given order.
+    private static void layout(int[] order) {
+        for(int i = 0; i < order.length; i++) { IntList.allocate(0); }
+        for(int i = order.length - 1; i >= 0; i--) { IntList.release(order[i]); }
+    }
+
+    // Run one configuration of the suite in this JVM, and print the mean time in
+    // nanoseconds and the mean number of bytes allocated per operation. Before every
+    // operation, the pool is laid out so that the chain visits its nodes in ascending
+    // order of index, except for the given fraction of them, which are scattered.
+    public static void suiteRun(String op, int size, String dist, double frag, boolean checked,
+    int warmup, int iterations) {
+        Random rng = new Random(size);
+        int[] data = suiteKeys(dist, size, rng);
+        int[] order = new int[size];
+        for(int i = 0; i < size; i++) { order[i] = i + 1; }
+        for(int i = 0; i < (int)(frag * size); i++) {
+            int j = i + rng.nextInt(size - i);
+            int tmp = order[i]; order[i] = order[j]; order[j] = tmp;
+        }
+        IntList.initialize(size + 1, checked);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long totalTime = 0, totalBytes = 0;
+        for(int i = 0; i < warmup + iterations; i++) {
+            layout(order);
+            int n = op.equals("allocate") ? 0 : IntList.allocate(data);
+            long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            long startTime = System.nanoTime();
+            switch(op) {
+                case "allocate": n = IntList.allocate(data); break;
+                case "release": IntList.release(n); n = 0; break;
+                case "reverse": n = IntList.reverse(n); break;
+                case "removeFirst": n = IntList.removeFirst(n, -1); break;
+                case "removeIfDivisible": n = IntListMethods.removeIfDivisible(n, 3); break;
+                case "sort": n = IntListMethods.sort(n); break;
+                default: throw new IllegalArgumentException("Unknown operation " + op);
+            }
+            long endTime = System.nanoTime();
+            long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+            if(i >= warmup) {
+                totalTime += endTime - startTime;
+                totalBytes += bytes;
+            }
+            IntList.release(n);
+        }
+        System.out.println((double)totalTime / iterations + " " + (double)totalBytes / iterations);
+    }
+
+    // The parameters of the suite and their defaults. Each parameter that takes a list of
+    // values multiplies the number of configurations.
+    private static final String[][] SUITE_DEFAULTS = {
+        {"op", "allocate,release,reverse,removeFirst,removeIfDivisible,sort"},
+        {"size", "1000,1000000"},
+        {"dist", "random,sorted,reversed,duplicates"},
+        {"frag", "0,1"},
+        {"checked", "true"},
+        {"forks", "2"},
+        {"warmup", "20"},
+        {"iterations", "20"}
+    };
+
+    // Run every combination of the given parameter values, each configuration in several
+    // fresh JVMs, and report the time and allocation per operation as the mean over the
+    // forks together with the standard deviation of the time between forks.
+    public static void suite(String[] args) throws InterruptedException {
+        Map<String, String> params = new LinkedHashMap<>();
+        for(String[] p: SUITE_DEFAULTS) { params.put(p[0], p[1]); }
+        for(String arg: args) {
+            int eq = arg.indexOf('=');
+            if(eq < 0 || !params.containsKey(arg.substring(0, eq))) {
+                System.out.println("Unknown suite parameter " + arg + ", expected one of " + params.keySet());
+                return;
+            }
+            params.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int forks = Integer.parseInt(params.get("forks"));
+        System.out.printf("%-17s %10s %-10s %5s %-9s %18s %10s %12s%n",
+            "op", "size", "dist", "frag", "mode", "ns/op", "ns/node", "B/op");
+        for(String op: params.get("op").split(","))
+        for(String size: params.get("size").split(","))
+        for(String dist: params.get("dist").split(","))
+        for(String frag: params.get("frag").split(","))
+        for(String checked: params.get("checked").split(",")) {
+            double sum = 0, sumSquares = 0, bytes = 0;
+            int runs = 0;
+            for(int f = 0; f < forks; f++) {
+                String result = forkResult("suite-run", op, size, dist, frag, checked,
+                    params.get("warmup"), params.get("iterations"));
+                String[] fields = result == null ? new String[0] : result.split(" ");
+                if(fields.length != 2) {
+                    System.out.println("Benchmark " + op + " failed: " + result);
+                    break;
+                }
+                double time = Double.parseDouble(fields[0]);
+                sum += time;
+                sumSquares += time * time;
+                bytes += Double.parseDouble(fields[1]);
+                runs++;
+            }
+            if(runs == 0) { continue; }
+            double mean = sum / runs;
+            double deviation = Math.sqrt(Math.max(0, sumSquares / runs - mean * mean));
+            System.out.printf("%-17s %10s %-10s %5s %-9s %10.0f +- %5.0f %10.2f %12.0f%n", op, size, dist, frag,
+                Boolean.parseBoolean(checked) ? "checked" : "unchecked", mean, deviation,
+                mean / Integer.parseInt(size), bytes / runs);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String mode = args.length > 0 ? args[0] : "concurrent";
+        if(mode.equals("concurrent")) {
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+            concurrent(threads, rounds);
+        }
+        else if(mode.equals("startup")) {
+            startup(args.length > 1 ? Integer.parseInt(args[1]) : 500000000);
+        }
+        else if(mode.equals("modes")) {
+            String size = args.length > 1 ? args[1] : "1000000";
+            String rounds = args.length > 2 ? args[2] : "20";
+            fork("modes-run", size, rounds, "true");
+            fork("modes-run", size, rounds, "false");
+        }
+        else if(mode.equals("modes-run")) {
+            modes(Integer.parseInt(args[1]), Boolean.parseBoolean(args[3]), Integer.parseInt(args[2]));
+        }
+        else if(mode.equals("compact")) {
+            compact(args.length > 1 ? Integer.parseInt(args[1]) : 10000000, args.length > 2 ? Integer.parseInt(args[2]) : 10);
+        }
+        else if(mode.equals("sort")) {
+            int size = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+            boolean checked = args.length <= 2 || Boolean.parseBoolean(args[2]);
+            sort(size, checked, args.length > 3 ? Integer.parseInt(args[3]) : 3);
+        }
+        else if(mode.equals("parallel")) {
+            int size = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+            boolean checked = args.length <= 2 || Boolean.parseBoolean(args[2]);
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            parallelSort(size, checked, threads, args.length > 4 ? Integer.parseInt(args[4]) : 3);
+        }
+        else if(mode.equals("filter")) {
+            int size = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+            boolean checked = args.length <= 2 || Boolean.parseBoolean(args[2]);
+            filter(size, checked, args.length > 3 ? Integer.parseInt(args[3]) : 10);
+        }
+        else if(mode.equals("skiplist")) {
+            int size = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+            skipList(size, args.length > 2 ? Integer.parseInt(args[2]) : 1000000);
+        }
+        else if(mode.equals("suite")) {
+            suite(Arrays.copyOfRange(args, 1, args.length));
+        }
+        else if(mode.equals("suite-run")) {
+            suiteRun(args[1], Integer.parseInt(args[2]), args[3], Double.parseDouble(args[4]),
+                Boolean.parseBoolean(args[5]), Integer.parseInt(args[6]), Integer.parseInt(args[7]));
+        }
+        else {
+            System.out.println("Unknown benchmark " + mode);
+        }
+    }
+}
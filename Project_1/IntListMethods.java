@@ -1,44 +1,275 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
 
 public class IntListMethods {
+	/**
+	 * Removes the nodes whose keys are divisible by {@code k} from the chain.
+	 * @param n The first node of the chain.
+	 * @param k The divisor.
+	 * @return The first node of the resulting chain, 0 if every node was removed.
+	 */
 	public static int removeIfDivisible(int n , int k) {
-		int start;
-		int r;
-		int temp;
-		if(n != 0) {
-			while((IntList.getKey(n) % k) == 0) {
-				r = n;//get n to be released
-				n = IntList.getNext(n);// set to be its next
-				IntList.setNext(r, 0);
-				IntList.release(r);
+		return removeIf(n, key -> key % k == 0);
+	}
+
+	/**
+	 * Removes the nodes whose keys satisfy the given predicate from the chain. The chain is
+	 * walked once with a trailing pointer to the last kept node. The removed nodes are linked
+	 * into a side chain as they are found and released together in one constant-time splice
+	 * at the end. Successors are only written where the chain actually changes, so a run of
+	 * kept nodes costs no writes at all.
+	 * @param n The first node of the chain.
+	 * @param p The predicate that selects the keys of the nodes to remove.
+	 * @return The first node of the resulting chain, 0 if every node was removed.
+	 * @throws IllegalStateException If a node to remove is in a frozen chain, in which case
+	 * the chain is left unchanged.
+	 */
+	public static int removeIf(int n, IntPredicate p) {
+		IntListPool pool = IntList.getPool();
+		if(pool.hasFrozenChains()) {// check before anything is relinked
+			for(int m = n; m != 0; m = IntList.getNext(m)) {
+				if(pool.isFrozen(m) && p.test(IntList.getKey(m))) {
+					throw new IllegalStateException("Trying to remove node " + m + " in a frozen chain.");
+				}
 			}
-			if(n == 0)//when entire list is divisable
-				return 0;
-			start = n;
-			while(n != 0 && IntList.getNext(n) != 0) {// start (if next is not null if null then rturn
-				if(IntList.getKey(IntList.getNext(n))%k == 0){// checking if the next node is divisable
-					r = IntList.getNext(n);//saves node that is about to be released
-					if(IntList.getNext(IntList.getNext(n)) != 0) {//double check (check if divisable node next is not null
-						temp = IntList.getNext(IntList.getNext(n));
-						IntList.setNext(n,temp);
-					}else {//increment
-							IntList.setNext(n,0);
-					}//double check
-					IntList.setNext(r, 0);
-					IntList.release(r);
-				}else {//incremement n if n exist(n exist in prior if statement
-						n = IntList.getNext(n);
-				}	
+		}
+		int head = 0, tail = 0;// the kept nodes
+		int gone = 0, goneTail = 0, goneCount = 0;// the removed nodes
+		int prev = 0;
+		while(n != 0) {
+			int m = IntList.getNext(n);
+			if(p.test(IntList.getKey(n))) {
+				if(goneTail == 0) { gone = n; }
+				else if(goneTail != prev) { IntList.setNext(goneTail, n); }
+				goneTail = n;
+				goneCount++;
+			}else {
+				if(tail == 0) { head = n; }
+				else if(tail != prev) { IntList.setNext(tail, n); }
+				tail = n;
 			}
-			return start;
-		}else {
-			return 0;
+			prev = n;
+			n = m;
 		}
+		// Terminate both chains unless their last node already ends the original chain.
+		if(tail != 0 && tail != prev) { IntList.setNext(tail, 0); }
+		if(goneTail != 0) {
+			if(goneTail != prev) { IntList.setNext(goneTail, 0); }
+			IntList.release(gone, goneTail, goneCount);
+		}
+		return head;
 	}
 
+	// The stack of pending runs of mergeSort, one per thread since parallelSort sorts the
+	// segments concurrently. 32 slots cover chains of up to 2^32 runs.
+	private static final ThreadLocal<int[]> PENDING_RUNS = ThreadLocal.withInitial(() -> new int[32]);
+
+	// Chains at least this long are sorted by radix sort, whose fixed number of passes beats
+	// the logarithmic number of merge levels once the chain is long enough.
+	private static final int RADIX_THRESHOLD = 1 << 10;
+
+	/**
+	 * Sorts the chain from the given node by relinking its nodes, never changing their keys.
+	 * Short chains are sorted with {@code mergeSort} and long ones with {@code radixSort};
+	 * both are stable.
+	 * @param n The first node of the chain to sort.
+	 * @return The first node of the sorted chain.
+	 */
 	public static int sort(int n) {
+		int length = 0;
+		for(int m = n; m != 0 && length < RADIX_THRESHOLD; m = IntList.getNext(m)) { length++; }
+		return length < RADIX_THRESHOLD ? mergeSort(n) : radixSort(n);
+	}
+
+	/**
+	 * Sorts the chain from the given node by least significant digit radix sort. Each pass
+	 * distributes the nodes into 256 bucket chains by one byte of their keys and then
+	 * concatenates the buckets, all by relinking, so a pass costs one walk of the chain and
+	 * no key comparisons. Bytes in which all keys agree are skipped. The extra memory is a
+	 * fixed pair of bucket arrays per call.
+	 * @param n The first node of the chain to sort.
+	 * @return The first node of the sorted chain.
+	 */
+	public static int radixSort(int n) {
+		if(n == 0) { return 0; }
+		// Flipping the sign bit makes the unsigned byte order agree with the signed key order.
+		int first = IntList.getKey(n), varying = 0;
+		for(int m = n; m != 0; m = IntList.getNext(m)) { varying |= IntList.getKey(m) ^ first; }
+		int[] heads = new int[256];
+		int[] tails = new int[256];
+		for(int shift = 0; shift < 32; shift += 8) {
+			if(((varying >>> shift) & 0xFF) == 0) { continue; }
+			for(int m = n; m != 0;) {
+				int b = ((IntList.getKey(m) ^ Integer.MIN_VALUE) >>> shift) & 0xFF;
+				if(heads[b] == 0) { heads[b] = m; } else { IntList.setNext(tails[b], m); }
+				tails[b] = m;
+				m = IntList.getNext(m);
+			}
+			int tail = 0;
+			for(int b = 0; b < 256; b++) {
+				if(heads[b] == 0) { continue; }
+				if(tail == 0) { n = heads[b]; } else { IntList.setNext(tail, heads[b]); }
+				tail = tails[b];
+				heads[b] = 0;
+			}
+			IntList.setNext(tail, 0);
+		}
+		return n;
+	}
+
+	/**
+	 * Sorts the chain from the given node by natural bottom-up merge sort. The chain is cut
+	 * into its existing ascending runs, which are merged like the digits of a binary counter:
+	 * the stack of pending runs holds at most one run of each size class, and a new run is
+	 * merged with equal-sized pending runs while they are still hot in the cache. Only the
+	 * successors of the nodes are changed, never their keys, so the sort works while the keys
+	 * are locked. The stack of pending runs is an array of 32 slots that each thread creates
+	 * on its first sort and reuses afterwards, so a call allocates nothing, whatever the
+	 * length of the chain. The sort is stable, and an already sorted chain is recognized in a
+	 * single pass.
+	 * @param n The first node of the chain to sort.
+	 * @return The first node of the sorted chain.
+	 */
+	public static int mergeSort(int n) {
+		// pending[i] is either 0 or a sorted run that is the merge of about 2^i natural runs.
+		// Only the slots below levels are read, and each of those is written by this call.
+		int[] pending = PENDING_RUNS.get();
+		int levels = 0;
+		while(n != 0) {
+			int rest = IntList.setNext(runEnd(n), 0);// cut the next natural run off the chain
+			int run = n;
+			int i = 0;
+			while(i < levels && pending[i] != 0) {
+				run = mergeRuns(pending[i], run);
+				pending[i] = 0;
+				i++;
+			}
+			if(i == levels) { levels++; }
+			pending[i] = run;
+			n = rest;
+		}
+		int result = 0;
+		for(int i = 0; i < levels; i++) {
+			if(pending[i] != 0) { result = result == 0 ? pending[i] : mergeRuns(pending[i], result); }
+		}
+		return result;
+	}
+
+	// Merges the sorted chains a and b by relinking their nodes and returns the first node of
+	// the result. Ties go to a, so merging an earlier run into a later one keeps the sort stable.
+	static int mergeRuns(int a, int b) {
+		int ka = IntList.getKey(a), kb = IntList.getKey(b);
+		int head;
+		if(kb < ka) { head = b; b = IntList.getNext(b); if(b != 0) { kb = IntList.getKey(b); } }
+		else { head = a; a = IntList.getNext(a); if(a != 0) { ka = IntList.getKey(a); } }
+		int tail = head;
+		while(a != 0 && b != 0) {
+			if(kb < ka) {
+				IntList.setNext(tail, b);
+				tail = b;
+				b = IntList.getNext(b);
+				if(b != 0) { kb = IntList.getKey(b); }
+			}else {
+				IntList.setNext(tail, a);
+				tail = a;
+				a = IntList.getNext(a);
+				if(a != 0) { ka = IntList.getKey(a); }
+			}
+		}
+		IntList.setNext(tail, a != 0 ? a : b);// the rest of the unfinished run is already in order
+		return head;
+	}
+
+	// Chains shorter than this are sorted sequentially, since splitting them costs more than
+	// the parallel merging saves.
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Sorts the chain from the given node in parallel on the common fork-join pool.
+	 * @param n The first node of the chain to sort.
+	 * @return The first node of the sorted chain.
+	 */
+	public static int parallelSort(int n) {
+		return parallelSort(n, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Sorts the chain from the given node in parallel. The chain is cut into a few segments
+	 * per worker thread, the segments are sorted concurrently with {@code sort}, and the
+	 * sorted segments are merged pairwise up a tree of tasks by relinking their nodes. As in
+	 * {@code sort}, only the successors of the nodes change, so the sorted chain consists of
+	 * the same nodes, the keys may stay locked, and the sort is stable.
+	 * @param n The first node of the chain to sort.
+	 * @param pool The fork-join pool whose threads do the work.
+	 * @return The first node of the sorted chain.
+	 */
+	public static int parallelSort(int n, ForkJoinPool pool) {
+		int length = 0;
+		for(int m = n; m != 0; m = IntList.getNext(m)) { length++; }
+		if(length < PARALLEL_THRESHOLD || pool.getParallelism() == 1) { return sort(n); }
+		int segments = 4 * pool.getParallelism();
+		int[] heads = new int[segments];
+		int m = n;
+		for(int i = 0; i < segments; i++) {// cut the chain into segments of nearly equal length
+			heads[i] = m;
+			int segmentLength = length / segments + (i < length % segments ? 1 : 0);
+			for(int j = 1; j < segmentLength; j++) { m = IntList.getNext(m); }
+			if(segmentLength > 0) { m = IntList.setNext(m, 0); }
+			else { heads[i] = 0; }
+		}
+		return pool.invoke(new SortTask(heads, 0, segments));
+	}
+
+	// Sorts the segments heads[lo..hi) and merges them into one chain.
+	private static class SortTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+		private final int[] heads;
+		private final int lo, hi;
+
+		SortTask(int[] heads, int lo, int hi) {
+			this.heads = heads; this.lo = lo; this.hi = hi;
+		}
+
+		@Override
+		protected Integer compute() {
+			if(hi - lo == 1) { return sort(heads[lo]); }
+			int mid = (lo + hi) >>> 1;
+			SortTask left = new SortTask(heads, lo, mid);
+			left.fork();
+			int b = new SortTask(heads, mid, hi).compute();
+			int a = left.join();
+			if(a == 0) { return b; }
+			if(b == 0) { return a; }
+			return mergeRuns(a, b);
+		}
+	}
+
+	// Returns the last node of the ascending run that starts from node n.
+	private static int runEnd(int n) {
+		int k = IntList.getKey(n);
+		int m = IntList.getNext(n);
+		while(m != 0) {
+			int km = IntList.getKey(m);
+			if(km < k) { break; }
+			n = m; k = km;
+			m = IntList.getNext(m);
+		}
+		return n;
+	}
+
+	/**
+	 * Sorts the chain from the given node by copying its node indices into an array and
+	 * merge sorting that array. Kept as the baseline for the relinking {@code sort}.
+	 * @param n The first node of the chain to sort.
+	 * @return The first node of the sorted chain.
+	 */
+	static int sortByArray(int n) {
+		if(n == 0) { return 0; }
 		int size;
 		int start;
-		int length = IntList.getAllocatedNodeCount();
+		int length = 0;
+		for(int m = n; m != 0; m = IntList.getNext(m)) { length++; }
 		int arr[] = new int[length];
 		for(int i = 0; i < length; i++ ) {
 			arr[i] = n;
@@ -0,0 +1,748 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * An instance-based node pool with the same node model as {@code IntList}: each node
+ * consists of an int key and the index of its successor, with index 0 denoting no
+ * successor. Unlike the static arena of {@code IntList}, any number of pools can
+ * exist side by side, and a pool grows on demand instead of running out of space.
+ *
+ * The nodes are stored in fixed-size chunks of two parallel arrays. Growing the pool
+ * adds new chunks and never moves the existing ones, so the index of an allocated
+ * node stays valid for the entire lifetime of the pool.
+ *
+ * Nodes that have never been allocated are handed out by advancing a high-water mark,
+ * and only released nodes go through the free list. The chunks are created only when
+ * the high-water mark reaches them, so creating a pool takes constant time and memory
+ * that is never used is never touched, no matter how large the initial capacity.
+ *
+ * Every access through this class verifies that the node is allocated and is counted
+ * in the metrics of the pool, which catches most bugs in the code that uses the pool.
+ * Once that code has been debugged, {@code UncheckedIntListPool} offers the same
+ * operations without these checks.
+ */
+public class IntListPool {
+
+    // The largest and smallest chunk sizes, expressed as powers of two.
+    private static final int MAX_CHUNK_SHIFT = 20;
+    private static final int MIN_CHUNK_SHIFT = 6;
+
+    // Node index n lives in chunk n >>> chunkShift at position n & chunkMask.
+    protected final int chunkShift;
+    protected final int chunkMask;
+    // The keys and successors of the nodes, one pair of arrays per chunk. Nonnegative
+    // successor means that the node has been allocated, negative successor means that
+    // the node is in the free list, the bitwise complement of the value being its
+    // successor in the free list. The directories are replaced as a whole when they are
+    // full; see keyDirectory for how threads of a shared pool read them.
+    protected int[][] keyChunks;
+    protected int[][] nextChunks;
+    private static final VarHandle KEY_CHUNKS, NEXT_CHUNKS;
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            KEY_CHUNKS = lookup.findVarHandle(IntListPool.class, "keyChunks", int[][].class);
+            NEXT_CHUNKS = lookup.findVarHandle(IntListPool.class, "nextChunks", int[][].class);
+        }
+        catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    // Number of chunks created so far.
+    private int chunkCount;
+    // Total number of node slots in the chunks created so far, including the unused slot 0.
+    private int capacity;
+
+    // Position of the first node in the free list, 0 if the free list is empty.
+    private int freeHead = 0;
+    // Nodes at this index and above have never been allocated.
+    private int highWater = 1;
+
+    // Current number of allocated nodes in the pool.
+    private int allocatedNodeCount = 0;
+    // Largest number of allocated nodes seen by the last release. Since only releases
+    // decrease the count, this and the current count together give the true peak.
+    private int peakAllocatedNodeCount = 0;
+    // Number of nodes in the free list.
+    private int freeListLength = 0;
+
+    // Call counts and other metrics of this pool.
+    protected final IntListPoolMetrics metrics = new IntListPoolMetrics(this);
+    // Number of nodes released since the last reset. Only the thread using the pool writes
+    // it, with opaque stores so that other threads never read a torn value. Allocations
+    // are not counted separately, since every allocated node is either still allocated or
+    // has been released; allocatedAtReset is the allocated node count at the last reset.
+    private long releaseCount;
+    private int allocatedAtReset;
+    private static final VarHandle RELEASES;
+    static {
+        try {
+            RELEASES = MethodHandles.lookup().findVarHandle(IntListPool.class, "releaseCount", long.class);
+        }
+        catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    // Whether several threads may call the accessors at the same time.
+    private boolean shared;
+    // Whether the accessor calls are counted. A plain field, so that the check costs
+    // nothing measurable while counting is off; see IntListPoolMetrics.setAccessCounting.
+    boolean countingAccesses;
+
+    // For each node, the number of active freezes of chains that contain it, in chunks
+    // like the keys. Created on the first freeze, so that setKey in a pool that has never
+    // been frozen only pays for a null check. Replaced as a whole whenever a chunk is added.
+    private volatile int[][] frozenChunks;
+    private static final VarHandle FROZEN = MethodHandles.arrayElementVarHandle(int[].class);
+    // Source of the stamps that identify the freezes.
+    private final AtomicLong freezeStamps = new AtomicLong();
+    // The nodes frozen under each active stamp: their number and the sum of a hash of
+    // their indices, which does not depend on their order and so survives relinking.
+    private final ConcurrentHashMap<Long, long[]> freezes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new pool for the given number of nodes. The pool will grow past this
+     * size as needed, so the initial capacity is merely a hint for the chunk size.
+     * @param initialCapacity Number of nodes expected to be in use at the same time.
+     */
+    public IntListPool(int initialCapacity) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("Negative initial capacity " + initialCapacity);
+        }
+        int shift = MIN_CHUNK_SHIFT;
+        while(shift < MAX_CHUNK_SHIFT && (1 << shift) < initialCapacity) { shift++; }
+        chunkShift = shift;
+        chunkMask = (1 << shift) - 1;
+        int chunks = Math.max(1, (int)(((long)initialCapacity + chunkMask) >>> shift));
+        keyChunks = new int[chunks][];
+        nextChunks = new int[chunks][];
+    }
+
+    /**
+     * Returns the current number of allocated nodes.
+     * @return The current number of allocated nodes.
+     */
+    public int getAllocatedNodeCount() {
+        return allocatedNodeCount;
+    }
+
+    /**
+     * Returns the largest number of nodes allocated at the same time since the pool was
+     * created or its metrics were last reset.
+     * @return The peak number of allocated nodes.
+     */
+    public int getPeakAllocatedNodeCount() {
+        return Math.max(peakAllocatedNodeCount, allocatedNodeCount);
+    }
+
+    // Count the release of the given number of nodes.
+    private void countReleases(int count) {
+        RELEASES.setOpaque(this, releaseCount + count);
+    }
+
+    long getReleaseCount() {
+        return (long)RELEASES.getOpaque(this);
+    }
+
+    long getAllocationCount() {
+        return getReleaseCount() + allocatedNodeCount - allocatedAtReset;
+    }
+
+    void resetCounts() {
+        RELEASES.setOpaque(this, 0L);
+        allocatedAtReset = allocatedNodeCount;
+        peakAllocatedNodeCount = allocatedNodeCount;
+    }
+
+    /**
+     * Returns the number of released nodes waiting in the free list for reuse.
+     * @return The length of the free list.
+     */
+    public int getFreeListLength() {
+        return freeListLength;
+    }
+
+    /**
+     * Returns the index one past the highest node that has ever been allocated.
+     * @return The high-water mark of this pool.
+     */
+    public int getHighWaterMark() {
+        return highWater;
+    }
+
+    /**
+     * Returns the usage metrics of this pool.
+     * @return The metrics of this pool.
+     */
+    public IntListPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Declares whether other threads may call the node accessors while the pool grows, as
+     * the readers of a {@code PersistentIntList} do. A shared pool reads its chunk
+     * directory with acquire loads, see {@code keyDirectory}. The change must be made
+     * before the other threads are started, and reverted only after they have been joined.
+     * @param shared Whether the pool is now shared between threads.
+     * @return Whether the pool was shared before this call.
+     */
+    boolean setShared(boolean shared) {
+        boolean result = this.shared;
+        this.shared = shared;
+        return result;
+    }
+
+    /**
+     * Returns the number of node slots in the chunks created so far.
+     * @return The current capacity of this pool.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Create the chunk that the high-water mark has just reached, doubling the size of
+    // the chunk directory if it is full.
+    private void addChunk() {
+        if(chunkCount == Integer.MAX_VALUE >>> chunkShift) {
+            metrics.allocationFailures.increment();
+            throw new IllegalStateException("No more space for nodes available.");
+        }
+        if(chunkCount == keyChunks.length) {
+            int newLength = (int)Math.min(2L * keyChunks.length, Integer.MAX_VALUE >>> chunkShift);
+            // Release stores, so that a thread that reads the new directory with an
+            // acquire load also sees the chunks copied into it.
+            KEY_CHUNKS.setRelease(this, Arrays.copyOf(keyChunks, newLength));
+            NEXT_CHUNKS.setRelease(this, Arrays.copyOf(nextChunks, newLength));
+        }
+        keyChunks[chunkCount] = new int[chunkMask + 1];
+        nextChunks[chunkCount] = new int[chunkMask + 1];
+        chunkCount++;
+        capacity = chunkCount << chunkShift;
+    }
+
+    /**
+     * Returns the directory of key chunks for a node accessor. While the pool is shared,
+     * readers do not hold the lock under which another thread may replace the directory,
+     * so it is read with an acquire load that pairs with the release store in
+     * {@code addChunk}. A pool used by one thread at a time reads the plain field.
+     * @return The directory of key chunks.
+     */
+    protected final int[][] keyDirectory() {
+        return shared ? (int[][])KEY_CHUNKS.getAcquire(this) : keyChunks;
+    }
+
+    /**
+     * Returns the directory of successor chunks for a node accessor, read the same way as
+     * in {@code keyDirectory}.
+     * @return The directory of successor chunks.
+     */
+    protected final int[][] nextDirectory() {
+        return shared ? (int[][])NEXT_CHUNKS.getAcquire(this) : nextChunks;
+    }
+
+    /**
+     * Verifies that the node n really exists and has been allocated for use.
+     * @param n The index of the node to verify.
+     */
+    protected void verifyIndex(int n) {
+        if(n < 1 || n >= highWater || nextDirectory()[n >>> chunkShift][n & chunkMask] < 0) {
+            throw new IllegalStateException("Node " + n + " is not currently allocated for use.");
+        }
+    }
+
+    /**
+     * Returns the key of node {@code n}.
+     * @param n The index of node whose key is read.
+     * @return The key of node {@code n}.
+     */
+    public int getKey(int n) {
+        verifyIndex(n);
+        if(countingAccesses) { metrics.getKeys.increment(); }
+        return keyDirectory()[n >>> chunkShift][n & chunkMask];
+    }
+
+    /**
+     * Returns the successor of node {@code n}.
+     * @param n The index of node whose successor is read.
+     * @return The successor of node {@code n}.
+     */
+    public int getNext(int n) {
+        verifyIndex(n);
+        if(countingAccesses) { metrics.getNexts.increment(); }
+        return nextDirectory()[n >>> chunkShift][n & chunkMask];
+    }
+
+    /**
+     * Assigns a new key to node {@code n}.
+     * @param n The index of node whose key is assigned.
+     * @param k The new key of the node.
+     * @return The previous key of node {@code n} before this assignment.
+     */
+    public int setKey(int n, int k) {
+        verifyIndex(n);
+        if(countingAccesses) { metrics.setKeys.increment(); }
+        verifyNotFrozen(n);
+        int[] chunk = keyDirectory()[n >>> chunkShift];
+        int result = chunk[n & chunkMask];
+        chunk[n & chunkMask] = k;
+        return result;
+    }
+
+    /**
+     * Verifies that the key of node {@code n} is not frozen.
+     * @param n The index of the node whose key is about to be assigned.
+     * @throws IllegalStateException If the node is in a frozen chain.
+     */
+    protected final void verifyNotFrozen(int n) {
+        if(isFrozen(n)) {
+            throw new IllegalStateException("Trying to modify the key of node " + n + " in a frozen chain.");
+        }
+    }
+
+    /**
+     * Checks whether node {@code n} is in a frozen chain.
+     * @param n The index of the node.
+     * @return True if some active freeze covers the node.
+     */
+    public final boolean isFrozen(int n) {
+        int[][] chunks = frozenChunks;
+        if(chunks == null) { return false; }
+        int c = n >>> chunkShift;
+        return c < chunks.length && chunks[c] != null && (int)FROZEN.getVolatile(chunks[c], n & chunkMask) != 0;
+    }
+
+    /**
+     * Checks whether any chain of this pool is currently frozen.
+     * @return True if some freeze has not been ended yet.
+     */
+    public final boolean hasFrozenChains() {
+        return !freezes.isEmpty();
+    }
+
+    // Verify that no node of the chain from n is frozen, walking the chain only if some
+    // chain of the pool is. Stops early at an invalid successor, which the caller reports.
+    protected final void verifyReleasable(int n) {
+        if(freezes.isEmpty()) { return; }
+        for(int m = n; m > 0 && m < highWater; m = nextChunks[m >>> chunkShift][m & chunkMask]) {
+            if(isFrozen(m)) {
+                throw new IllegalStateException("Trying to release node " + m + " in a frozen chain.");
+            }
+        }
+    }
+
+    // A hash of a node index, summed over the nodes of a frozen chain.
+    private static long nodeHash(int n) {
+        long h = n * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    // The chunk of freeze counts that covers node n, created if necessary.
+    private int[] frozenChunk(int n) {
+        int[][] chunks = frozenChunks;
+        int c = n >>> chunkShift;
+        if(chunks == null || c >= chunks.length || chunks[c] == null) {
+            synchronized(freezes) {
+                chunks = frozenChunks;
+                if(chunks == null || c >= chunks.length || chunks[c] == null) {
+                    chunks = chunks == null ? new int[keyChunks.length][] : Arrays.copyOf(chunks, keyChunks.length);
+                    chunks[c] = new int[chunkMask + 1];
+                    frozenChunks = chunks;
+                }
+            }
+        }
+        return chunks[c];
+    }
+
+    /**
+     * Freezes the keys of the chain from the given node until {@code unfreeze} is called
+     * with the returned stamp. While a node is in a frozen chain, {@code setKey} on it
+     * throws IllegalStateException, but its successor may still be changed, so a chain
+     * can be sorted by relinking while its keys are frozen. Any number of threads can
+     * freeze the same or different chains at the same time without blocking each other.
+     * A freeze only affects key assignments that begin after it returns.
+     * @param n The first node of the chain to freeze.
+     * @return The stamp that identifies this freeze.
+     * @throws IllegalStateException If some node of the chain is not allocated, in which
+     * case no node is frozen.
+     */
+    public long freeze(int n) {
+        // Verify the whole chain first, so that a bad node cannot leave the nodes before it
+        // frozen without any stamp to unfreeze them with.
+        long count = 0, hash = 0;
+        for(int m = n; m != 0; m = getNext(m)) {
+            count++;
+            hash += nodeHash(m);
+        }
+        int m = n;
+        for(long i = 0; i < count; i++) {
+            FROZEN.getAndAdd(frozenChunk(m), m & chunkMask, 1);
+            m = getNext(m);
+        }
+        long stamp = freezeStamps.incrementAndGet();
+        freezes.put(stamp, new long[] {count, hash});
+        return stamp;
+    }
+
+    /**
+     * Ends a freeze. The chain may have been relinked in the meantime, but it must consist
+     * of the same nodes that were frozen, which is checked by comparing their number and
+     * the sum of a hash of their indices with those recorded by {@code freeze}.
+     * @param n The first node of the frozen chain.
+     * @param stamp The stamp returned by {@code freeze}.
+     * @throws IllegalStateException If the stamp is not that of an active freeze, or the
+     * chain does not consist of the nodes frozen under it.
+     */
+    public void unfreeze(int n, long stamp) {
+        long[] frozen = freezes.get(stamp);
+        if(frozen == null) {
+            throw new IllegalStateException("No chain is frozen under stamp " + stamp + ".");
+        }
+        // Exactly the recorded number of nodes, all of them frozen, and nothing after them.
+        long seen = 0, hash = 0;
+        int m = n;
+        for(; m != 0 && seen < frozen[0]; m = getNext(m)) {
+            if(!isFrozen(m)) { break; }
+            seen++;
+            hash += nodeHash(m);
+        }
+        if(m != 0 || seen != frozen[0] || hash != frozen[1]) {
+            throw new IllegalStateException("The chain from node " + n + " is not the chain frozen under stamp "
+                + stamp + ".");
+        }
+        if(!freezes.remove(stamp, frozen)) {
+            throw new IllegalStateException("No chain is frozen under stamp " + stamp + ".");
+        }
+        m = n;
+        for(long i = 0; i < seen; i++) {
+            FROZEN.getAndAdd(frozenChunk(m), m & chunkMask, -1);
+            m = getNext(m);
+        }
+    }
+
+    /**
+     * Assigns a new successor node to node {@code n}.
+     * @param n The index of node whose successor is assigned.
+     * @param m The new successor of the node.
+     * @return The previous successor of node {@code n} before this assignment.
+     */
+    public int setNext(int n, int m) {
+        verifyIndex(n);
+        if(countingAccesses) { metrics.setNexts.increment(); }
+        int[] chunk = nextDirectory()[n >>> chunkShift];
+        int result = chunk[n & chunkMask];
+        chunk[n & chunkMask] = m;
+        return result;
+    }
+
+    // Take the next node from the free list or, if that is empty, from above the
+    // high-water mark. Successors of free nodes in the interior of a chain spliced into the
+    // free list by an unchecked pool were never complemented, so both forms are accepted.
+    private int take() {
+        if(freeHead != 0) {
+            int n = freeHead;
+            int m = nextChunks[n >>> chunkShift][n & chunkMask];
+            freeHead = m < 0 ? ~m : m;
+            freeListLength--;
+            return n;
+        }
+        if(highWater >= capacity) { addChunk(); }
+        return highWater++;
+    }
+
+    /**
+     * Allocates a new node with the given key, growing the pool if necessary.
+     * @param k The key for the new node.
+     * @return The index of the new allocated node.
+     */
+    public int allocate(int k) {
+        int n = take();
+        nextChunks[n >>> chunkShift][n & chunkMask] = 0;
+        keyChunks[n >>> chunkShift][n & chunkMask] = k;
+        allocatedNodeCount++;
+        return n;
+    }
+
+    /**
+     * Allocates a chain of nodes for the keys in the parameter array.
+     * @param keys The array of keys to convert into a linked list.
+     * @return The index of the first node of the chain.
+     */
+    public int allocate(int[] keys) {
+        return allocate(keys, 0, keys.length);
+    }
+
+    /**
+     * Allocates a chain of nodes for the keys in the given range of the parameter array
+     * in a single pass. Free nodes are reused first, in the order in which the free list
+     * holds them, so a chain that was released as a whole is reallocated into the same
+     * nodes in the same order. The rest of the chain is carved as one run of ascending
+     * indices from above the high-water mark, so traversing it is sequential in memory.
+     * @param keys The array of keys to convert into a linked list.
+     * @param from The index of the first key to use.
+     * @param to The index one past the last key to use.
+     * @return The index of the first node of the chain, or 0 if the range is empty.
+     */
+    public int allocate(int[] keys, int from, int to) {
+        if(from < 0 || to > keys.length || from > to) {
+            throw new IndexOutOfBoundsException("Range " + from + ".." + to + " of " + keys.length + " keys");
+        }
+        int head = 0, tail = 0;
+        int i = from;
+        while(i < to && freeHead != 0) {
+            int n = take();
+            keyChunks[n >>> chunkShift][n & chunkMask] = keys[i++];
+            nextChunks[n >>> chunkShift][n & chunkMask] = 0;
+            if(tail == 0) { head = n; } else { nextChunks[tail >>> chunkShift][tail & chunkMask] = n; }
+            tail = n;
+        }
+        // The rest comes from above the high-water mark, one chunk at a time.
+        while(i < to) {
+            if(highWater >= capacity) { addChunk(); }
+            int n = highWater;
+            int offset = n & chunkMask;
+            int run = Math.min(to - i, chunkMask + 1 - offset);
+            int[] keyChunk = keyChunks[n >>> chunkShift];
+            int[] nextChunk = nextChunks[n >>> chunkShift];
+            for(int r = 0; r < run; r++) {
+                keyChunk[offset + r] = keys[i + r];
+                nextChunk[offset + r] = n + r + 1;
+            }
+            nextChunk[offset + run - 1] = 0;
+            if(tail == 0) { head = n; } else { nextChunks[tail >>> chunkShift][tail & chunkMask] = n; }
+            tail = n + run - 1;
+            highWater += run;
+            i += run;
+        }
+        allocatedNodeCount += to - from;
+        return head;
+    }
+
+    /**
+     * Allocates a chain of nodes for the keys produced by the given stream, in order.
+     * @param keys The stream of keys to convert into a linked list.
+     * @return The index of the first node of the chain, or 0 if the stream is empty.
+     */
+    public int allocate(IntStream keys) {
+        int head = 0, tail = 0;
+        PrimitiveIterator.OfInt it = keys.iterator();
+        while(it.hasNext()) {
+            int n = take();
+            keyChunks[n >>> chunkShift][n & chunkMask] = it.nextInt();
+            nextChunks[n >>> chunkShift][n & chunkMask] = 0;
+            if(tail == 0) { head = n; } else { nextChunks[tail >>> chunkShift][tail & chunkMask] = n; }
+            tail = n;
+            allocatedNodeCount++;
+        }
+        return head;
+    }
+
+    /**
+     * Releases the entire chain of nodes from the starting node. If you want to
+     * release just one node, set its successor to 0 before calling this method.
+     * The released nodes keep their chain order in the free list, so that allocating
+     * a chain of the same length reuses them in the same order.
+     * @param n The first node of the chain to release.
+     * @return The number of nodes that were released.
+     * @throws IllegalStateException If some node of the chain is in a frozen chain, in
+     * which case nothing is released, or if the chain runs into a node that is not
+     * allocated, in which case the nodes before it are released.
+     */
+    public int release(int n) {
+        verifyReleasable(n);
+        int first = n, last = 0;
+        int count = 0;
+        try {
+            while(n != 0) {
+                verifyIndex(n);
+                int[] nextChunk = nextChunks[n >>> chunkShift];
+                int m = nextChunk[n & chunkMask];
+                nextChunk[n & chunkMask] = ~(m != 0 ? m : freeHead);
+                last = n;
+                n = m;
+                count++;
+            }
+        }
+        finally {
+            // If the chain runs into a node that is not allocated, the nodes before it are
+            // already marked as free, so they must go into the free list all the same.
+            if(count > 0) {
+                if(n != 0) { nextChunks[last >>> chunkShift][last & chunkMask] = ~freeHead; }
+                freeHead = first;
+            }
+            peakAllocatedNodeCount = getPeakAllocatedNodeCount();
+            allocatedNodeCount -= count;
+            freeListLength += count;
+            countReleases(count);
+        }
+        return count;
+    }
+
+    /**
+     * Releases a chain of known tail and length by splicing it in front of the free list
+     * as it is. This pool verifies the whole chain and marks each of its nodes as free,
+     * so that accessing any of them afterwards is detected as an error, while
+     * {@code UncheckedIntListPool} only links the tail to the free list, in constant time.
+     * @param head The first node of the chain to release.
+     * @param tail The last node of the chain to release, whose successor must be 0.
+     * @param count The number of nodes in the chain.
+     * @return The number of nodes that were released.
+     * @throws IllegalStateException If some node of the chain is in a frozen chain, or the
+     * chain does not end at the tail after the given number of nodes, in which case
+     * nothing is released.
+     */
+    public int release(int head, int tail, int count) {
+        if(head == 0) { return 0; }
+        verifyReleasable(head);
+        int length = 1;
+        verifyIndex(head);
+        for(int n = head; n != tail; length++) {
+            n = nextChunks[n >>> chunkShift][n & chunkMask];
+            if(n == 0) {
+                throw new IllegalStateException("Node " + tail + " is not in the chain of node " + head + ".");
+            }
+            verifyIndex(n);
+        }
+        if(length != count) {
+            throw new IllegalStateException("Chain of node " + head + " has " + length + " nodes, not " + count + ".");
+        }
+        for(int n = head; n != tail; ) {
+            int[] nextChunk = nextChunks[n >>> chunkShift];
+            int m = nextChunk[n & chunkMask];
+            nextChunk[n & chunkMask] = ~m;
+            n = m;
+        }
+        return splice(head, tail, count);
+    }
+
+    /**
+     * Puts the chain from the head to the tail in front of the free list and counts its
+     * nodes as released. Only the successor of the tail is written, so the other nodes
+     * are not marked as free unless the caller has done so.
+     * @param head The first node of the chain to release.
+     * @param tail The last node of the chain to release, whose successor must be 0.
+     * @param count The number of nodes in the chain.
+     * @return The number of nodes that were released.
+     */
+    protected final int splice(int head, int tail, int count) {
+        int[] nextChunk = nextChunks[tail >>> chunkShift];
+        if(nextChunk[tail & chunkMask] != 0) {
+            throw new IllegalStateException("Node " + tail + " is not the last node of its chain.");
+        }
+        nextChunk[tail & chunkMask] = ~freeHead;
+        freeHead = head;
+        peakAllocatedNodeCount = getPeakAllocatedNodeCount();
+        allocatedNodeCount -= count;
+        freeListLength += count;
+        countReleases(count);
+        return count;
+    }
+
+    /**
+     * Rewrites the given chains so that the successive nodes of each chain sit at ascending
+     * consecutive indices, which turns their traversal into a sequential scan of memory.
+     * The chains must not share nodes.
+     *
+     * If the chains contain every allocated node of the pool, they are compacted in place
+     * into the lowest indices of the pool, in the order of the roots, and the free list is
+     * emptied. Otherwise each chain is copied into a fresh run above the high-water mark
+     * and its old nodes are released, so the other chains of the pool are not disturbed.
+     * Either way, the indices of the nodes of the given chains change and only the
+     * returned roots are valid afterwards.
+     * @param roots The first nodes of the chains to compact, 0 for an empty chain.
+     * @return The new first nodes of the chains, in the same order as the parameter.
+     * @throws IllegalStateException If some chain of the pool is frozen.
+     */
+    public int[] compact(int[] roots) {
+        if(!freezes.isEmpty()) {
+            throw new IllegalStateException("Cannot compact a pool with frozen chains.");
+        }
+        long total = 0;
+        for(int root: roots) {
+            for(int n = root; n != 0; n = nextChunks[n >>> chunkShift][n & chunkMask]) {
+                verifyIndex(n);
+                total++;
+            }
+        }
+        int[] result = new int[roots.length];
+        if(total == allocatedNodeCount) {
+            compactAll(roots, result);
+        }
+        else {
+            for(int i = 0; i < roots.length; i++) {
+                result[i] = relocate(roots[i]);
+            }
+        }
+        return result;
+    }
+
+    // Move the nodes of the given chains, which contain every allocated node, to indices
+    // 1, 2, ... in chain order by following the cycles of the permutation in place.
+    private void compactAll(int[] roots, int[] result) {
+        // The new index of each old node, 0 for free slots. An entry is negated once the
+        // node has been moved, so that its absolute value still translates successors.
+        int[] map = new int[highWater];
+        int index = 1;
+        for(int root: roots) {
+            for(int n = root; n != 0; n = nextChunks[n >>> chunkShift][n & chunkMask]) {
+                map[n] = index++;
+            }
+        }
+        for(int s = 1; s < highWater; s++) {
+            if(map[s] <= 0) { continue; }
+            int carriedKey = keyChunks[s >>> chunkShift][s & chunkMask];
+            int carriedNext = nextChunks[s >>> chunkShift][s & chunkMask];
+            int dst = map[s];
+            map[s] = -dst;
+            while(true) {
+                int[] keyChunk = keyChunks[dst >>> chunkShift];
+                int[] nextChunk = nextChunks[dst >>> chunkShift];
+                int occupant = map[dst];
+                int occupantKey = keyChunk[dst & chunkMask];
+                int occupantNext = nextChunk[dst & chunkMask];
+                keyChunk[dst & chunkMask] = carriedKey;
+                nextChunk[dst & chunkMask] = carriedNext == 0 ? 0 : Math.abs(map[carriedNext]);
+                // Stop when the slot was free or its node has already been carried away.
+                if(occupant <= 0) { break; }
+                map[dst] = -occupant;
+                carriedKey = occupantKey;
+                carriedNext = occupantNext;
+                dst = occupant;
+            }
+        }
+        for(int i = 0; i < roots.length; i++) {
+            result[i] = roots[i] == 0 ? 0 : -map[roots[i]];
+        }
+        highWater = index;
+        freeHead = 0;
+        freeListLength = 0;
+    }
+
+    // Copy the chain into consecutive fresh nodes above the high-water mark and release
+    // its old nodes. Returns the first node of the copy.
+    private int relocate(int n) {
+        int head = 0, tail = 0;
+        for(int m = n; m != 0; m = nextChunks[m >>> chunkShift][m & chunkMask]) {
+            if(highWater >= capacity) { addChunk(); }
+            int c = highWater++;
+            keyChunks[c >>> chunkShift][c & chunkMask] = keyChunks[m >>> chunkShift][m & chunkMask];
+            nextChunks[c >>> chunkShift][c & chunkMask] = 0;
+            if(tail == 0) { head = c; } else { nextChunks[tail >>> chunkShift][tail & chunkMask] = c; }
+            tail = c;
+            allocatedNodeCount++;
+        }
+        release(n);
+        return head;
+    }
+
+    /**
+     * For debugging purposes, output the counts of how many times each method has been called.
+     */
+    public void printStatistics() {
+        System.out.println(metrics.snapshot());
+    }
+}
@@ -0,0 +1,149 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Usage metrics of one {@code IntListPool}. Counting every node access would cost a
+ * memory write on the hottest path of the pool, so the accessor calls are only counted
+ * while access counting is switched on, which it is not by default. The counts then go
+ * to striped adders that any number of threads can update, and are exact. The node
+ * accessor counts are only maintained by the checked pool; the unchecked pool leaves
+ * them at zero and pays nothing for them on its hot path.
+ *
+ * Allocations are not counted at all, but derived from the released nodes, which the
+ * pool counts once per release call. Every value is safe to read from any thread, even
+ * while the pool is in use, but may lag behind the using thread by a few operations.
+ */
+public class IntListPoolMetrics implements IntListPoolMetricsMXBean {
+
+    // The pool whose gauges are reported.
+    private final IntListPool pool;
+
+    // Accessor counts from the times that access counting was on.
+    final LongAdder getKeys = new LongAdder();
+    final LongAdder getNexts = new LongAdder();
+    final LongAdder setKeys = new LongAdder();
+    final LongAdder setNexts = new LongAdder();
+    // Failed allocations, which are rare enough to count atomically.
+    final LongAdder allocationFailures = new LongAdder();
+
+    IntListPoolMetrics(IntListPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Switches the counting of accessor calls on or off. Counting makes every node access
+     * noticeably slower. The switch is a plain field, so a thread that is already
+     * running may only notice it after its next synchronization; switch it from the
+     * thread that uses the pool, or before that thread starts, to count exactly.
+     * @param on Whether accessor calls are counted from now on.
+     */
+    public void setAccessCounting(boolean on) { pool.countingAccesses = on; }
+    /** @return Whether accessor calls are currently counted. */
+    public boolean isAccessCounting() { return pool.countingAccesses; }
+    /** @return Number of getKey calls counted since the last reset. */
+    public long getGetKeyCount() { return getKeys.sum(); }
+    /** @return Number of getNext calls counted since the last reset. */
+    public long getGetNextCount() { return getNexts.sum(); }
+    /** @return Number of setKey calls counted since the last reset. */
+    public long getSetKeyCount() { return setKeys.sum(); }
+    /** @return Number of setNext calls counted since the last reset. */
+    public long getSetNextCount() { return setNexts.sum(); }
+    /** @return Number of nodes allocated since the last reset. */
+    public long getAllocationCount() { return pool.getAllocationCount(); }
+    /** @return Number of nodes released since the last reset. */
+    public long getReleaseCount() { return pool.getReleaseCount(); }
+    /** @return Number of allocations that failed because the index space was exhausted. */
+    public long getAllocationFailureCount() { return allocationFailures.sum(); }
+    /** @return Number of nodes currently allocated. */
+    public int getAllocatedNodeCount() { return pool.getAllocatedNodeCount(); }
+    /** @return Largest number of nodes allocated at the same time since the last reset. */
+    public int getPeakAllocatedNodeCount() { return pool.getPeakAllocatedNodeCount(); }
+    /** @return Number of released nodes waiting in the free list. */
+    public int getFreeListLength() { return pool.getFreeListLength(); }
+    /** @return Index one past the highest node ever allocated. */
+    public int getHighWaterMark() { return pool.getHighWaterMark(); }
+    /** @return Number of node slots in the chunks created so far. */
+    public int getCapacity() { return pool.getCapacity(); }
+
+    /**
+     * Resets the event counters and the peak allocated node count. Like any other
+     * operation that changes the pool, this must not overlap with its use by other threads.
+     */
+    public void reset() {
+        getKeys.reset();
+        getNexts.reset();
+        setKeys.reset();
+        setNexts.reset();
+        allocationFailures.reset();
+        pool.resetCounts();
+    }
+
+    /**
+     * Returns a point-in-time copy of all metrics.
+     * @return The snapshot of the metrics.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, so that they can be watched
+     * with any JMX console under the name {@code IntListPool:name=<name>}.
+     * @param name The name that identifies the pool among the registered pools.
+     * @throws JMException If the name is malformed or already registered.
+     */
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName(name));
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server.
+     * @param name The name under which the metrics were registered.
+     * @throws JMException If the name is malformed or not registered.
+     */
+    public void unregister(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName("IntListPool:name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * An immutable copy of the metrics of a pool at one moment.
+     */
+    public static class Snapshot {
+        public final long getKeyCount, getNextCount, setKeyCount, setNextCount;
+        public final long allocationCount, releaseCount, allocationFailureCount;
+        public final int allocatedNodeCount, peakAllocatedNodeCount, freeListLength;
+        public final int highWaterMark, capacity;
+
+        private Snapshot(IntListPoolMetrics m) {
+            getKeyCount = m.getGetKeyCount();
+            getNextCount = m.getGetNextCount();
+            setKeyCount = m.getSetKeyCount();
+            setNextCount = m.getSetNextCount();
+            allocationCount = m.getAllocationCount();
+            releaseCount = m.getReleaseCount();
+            allocationFailureCount = m.getAllocationFailureCount();
+            allocatedNodeCount = m.getAllocatedNodeCount();
+            peakAllocatedNodeCount = m.getPeakAllocatedNodeCount();
+            freeListLength = m.getFreeListLength();
+            highWaterMark = m.getHighWaterMark();
+            capacity = m.getCapacity();
+        }
+
+        @Override
+        public String toString() {
+            return "Method call counts: getKey " + getKeyCount + ", setKey " + setKeyCount
+                + ", getNext " + getNextCount + ", setNext " + setNextCount + ".\n"
+                + "Nodes: allocated " + allocatedNodeCount + " (peak " + peakAllocatedNodeCount
+                + "), free list " + freeListLength + ", high-water mark " + highWaterMark
+                + ", capacity " + capacity + ".\n"
+                + "Allocations " + allocationCount + ", releases " + releaseCount
+                + ", failed allocations " + allocationFailureCount + ".";
+        }
+    }
+}
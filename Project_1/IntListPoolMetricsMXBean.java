@@ -0,0 +1,21 @@
+/**
+ * The management interface through which the metrics of an {@code IntListPool} are
+ * exposed over JMX. See {@link IntListPoolMetrics} for the meaning of the attributes.
+ */
+public interface IntListPoolMetricsMXBean {
+    long getGetKeyCount();
+    long getGetNextCount();
+    long getSetKeyCount();
+    long getSetNextCount();
+    long getAllocationCount();
+    long getReleaseCount();
+    long getAllocationFailureCount();
+    int getAllocatedNodeCount();
+    int getPeakAllocatedNodeCount();
+    int getFreeListLength();
+    int getHighWaterMark();
+    int getCapacity();
+    boolean isAccessCounting();
+    void setAccessCounting(boolean on);
+    void reset();
+}
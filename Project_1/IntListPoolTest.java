@@ -0,0 +1,966 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class IntListPoolTest {
+
+    // Check that the chain from node n in the pool contains exactly the given keys.
+    private static boolean sameKeys(IntListPool pool, int n, List<Integer> keys) {
+        for(int k: keys) {
+            if(n == 0 || pool.getKey(n) != k) { return false; }
+            n = pool.getNext(n);
+        }
+        return n == 0;
+    }
+
+    // Build and release random chains in several independent pools that all start out
+    // tiny, so that every pool has to grow many times under the existing chains.
+    public static int testGrowth(int seed, int rounds, int size, boolean verbose) {
+        Random rng = new Random(seed);
+        int poolCount = 3;
+        IntListPool[] pools = new IntListPool[poolCount];
+        List<List<Integer>> shadow = new ArrayList<>();
+        List<Integer> heads = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        for(int p = 0; p < poolCount; p++) { pools[p] = new IntListPool(1); }
+        for(int i = 0; i < rounds; i++) {
+            if(heads.isEmpty() || rng.nextInt(3) > 0) {
+                int p = rng.nextInt(poolCount);
+                int[] data = new int[rng.nextInt(size) + 1];
+                List<Integer> keys = new ArrayList<>();
+                for(int j = 0; j < data.length; j++) {
+                    data[j] = rng.nextInt();
+                    keys.add(data[j]);
+                }
+                heads.add(pools[p].allocate(data));
+                owners.add(p);
+                shadow.add(keys);
+            }
+            else {
+                int c = rng.nextInt(heads.size());
+                int released = pools[owners.get(c)].release(heads.get(c));
+                if(released != shadow.get(c).size()) {
+                    System.out.println("ERROR: release returned " + released);
+                    return 9999999;
+                }
+                heads.remove(c); owners.remove(c); shadow.remove(c);
+            }
+        }
+        int[] expected = new int[poolCount];
+        for(int c = 0; c < heads.size(); c++) {
+            if(!sameKeys(pools[owners.get(c)], heads.get(c), shadow.get(c))) {
+                System.out.println("ERROR: chain " + c + " was corrupted by pool growth.");
+                return 9999998;
+            }
+            expected[owners.get(c)] += shadow.get(c).size();
+        }
+        for(int p = 0; p < poolCount; p++) {
+            if(pools[p].getAllocatedNodeCount() != expected[p]) {
+                System.out.println("ERROR: pool " + p + " reports " + pools[p].getAllocatedNodeCount()
+                + " allocated nodes instead of " + expected[p] + ".");
+                return 9999997;
+            }
+            if(verbose) {
+                System.out.println("Pool " + p + ": " + expected[p] + " nodes, capacity "
+                + pools[p].getCapacity() + ".");
+            }
+        }
+        for(int c = 0; c < heads.size(); c++) { pools[owners.get(c)].release(heads.get(c)); }
+        for(int p = 0; p < poolCount; p++) {
+            if(pools[p].getAllocatedNodeCount() != 0) {
+                System.out.println("ERROR: Memory leak of " + pools[p].getAllocatedNodeCount() + " nodes.");
+                return 9999996;
+            }
+        }
+        return 0;
+    }
+
+    // Allocate chains in bulk from arrays and streams, release them by splicing and
+    // check that a spliced chain is reallocated into the same run of nodes.
+    public static int testBulk(int seed, int rounds, int size) {
+        Random rng = new Random(seed);
+        IntListPool pool = new IntListPool(1);
+        for(int i = 0; i < rounds; i++) {
+            int[] data = new int[rng.nextInt(size) + 1];
+            for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(); }
+            int a = pool.allocate(data);
+            int b = pool.allocate(Arrays.stream(data));
+            List<Integer> keys = new ArrayList<>();
+            for(int k: data) { keys.add(k); }
+            if(!sameKeys(pool, a, keys) || !sameKeys(pool, b, keys)) {
+                System.out.println("ERROR: bulk allocated chain has wrong keys.");
+                return 9999987;
+            }
+            int tail = a;
+            while(pool.getNext(tail) != 0) { tail = pool.getNext(tail); }
+            try {
+                pool.release(a, tail, data.length + 1);
+                System.out.println("ERROR: chain was spliced with the wrong length.");
+                return 9999946;
+            }
+            catch(IllegalStateException e) { }
+            int second = pool.getNext(a);
+            pool.release(a, tail, data.length);
+            if(second != 0) {
+                try {
+                    pool.getKey(second);
+                    System.out.println("ERROR: interior node of a spliced chain still allocated.");
+                    return 9999945;
+                }
+                catch(IllegalStateException e) { }
+            }
+            int c = pool.allocate(data);
+            if(c != a) {
+                System.out.println("ERROR: spliced chain was not reused in order.");
+                return 9999986;
+            }
+            pool.release(c);
+            pool.release(b);
+        }
+        // Releasing a chain that runs into a released node fails, but still releases the
+        // nodes before that one.
+        int a = pool.allocate(new int[] {1, 2});
+        pool.release(pool.setNext(a, 0));
+        pool.setNext(a, pool.allocate(3));
+        pool.release(pool.getNext(a));
+        int free = pool.getFreeListLength();
+        try {
+            pool.release(a);
+            System.out.println("ERROR: a chain with a released node was released.");
+            return 9999936;
+        }
+        catch(IllegalStateException e) { }
+        if(pool.getAllocatedNodeCount() != 0 || pool.getFreeListLength() != free + 1) {
+            System.out.println("ERROR: failed release lost the nodes before the released node.");
+            return 9999935;
+        }
+        pool.release(pool.allocate(new int[free + 1]));
+        if(pool.getAllocatedNodeCount() != 0) {
+            System.out.println("ERROR: Memory leak of " + pool.getAllocatedNodeCount() + " nodes.");
+            return 9999985;
+        }
+        return 0;
+    }
+
+    // Scatter several chains over the pool by building them node by node from a shuffled
+    // free list, then compact first one chain and then all of them, and check that the
+    // chains keep their keys and end up in consecutive ascending nodes.
+    public static int testCompact(int seed, int chains, int size) {
+        Random rng = new Random(seed);
+        IntListPool pool = new IntListPool(1);
+        List<Integer> nodes = new ArrayList<>();
+        for(int i = 0; i < chains * size; i++) { nodes.add(pool.allocate(0)); }
+        Collections.shuffle(nodes, rng);
+        for(int n: nodes) { pool.release(n); }
+        int[] roots = new int[chains];
+        List<List<Integer>> shadow = new ArrayList<>();
+        for(int c = 0; c < chains; c++) {
+            List<Integer> keys = new ArrayList<>();
+            for(int j = 0; j < size; j++) {
+                int k = rng.nextInt();
+                keys.add(0, k);
+                int n = pool.allocate(k);
+                pool.setNext(n, roots[c]);
+                roots[c] = n;
+            }
+            shadow.add(keys);
+        }
+        int[] single = pool.compact(new int[] {roots[0]});
+        roots[0] = single[0];
+        roots = pool.compact(roots);
+        int expected = 1;
+        for(int c = 0; c < chains; c++) {
+            if(!sameKeys(pool, roots[c], shadow.get(c))) {
+                System.out.println("ERROR: compaction changed the keys of chain " + c + ".");
+                return 9999981;
+            }
+            for(int n = roots[c]; n != 0; n = pool.getNext(n)) {
+                if(n != expected++) {
+                    System.out.println("ERROR: chain " + c + " is not consecutive after compaction.");
+                    return 9999980;
+                }
+            }
+        }
+        if(pool.getAllocatedNodeCount() != chains * size || pool.getHighWaterMark() != expected) {
+            System.out.println("ERROR: compaction lost track of the allocated nodes.");
+            return 9999979;
+        }
+        return 0;
+    }
+
+    // Keys of the chain from node n of the static IntList.
+    private static List<Integer> keysOf(int n) {
+        List<Integer> keys = new ArrayList<>();
+        for(; n != 0; n = IntList.getNext(n)) { keys.add(IntList.getKey(n)); }
+        return keys;
+    }
+
+    // Run the IntChains operations on random chains and compare them against lists.
+    public static int testChains(int seed, int rounds, int size) {
+        Random rng = new Random(seed);
+        IntList.initialize(size + 1);
+        int[] parts = new int[2];
+        for(int i = 0; i < rounds; i++) {
+            int chains = rng.nextInt(6) + 1;
+            int[] heads = new int[chains];
+            List<Integer> all = new ArrayList<>();
+            for(int c = 0; c < chains; c++) {
+                int[] data = new int[rng.nextInt(size / chains + 1)];
+                for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(30); }
+                Arrays.sort(data);
+                heads[c] = IntList.allocate(data);
+                for(int k: data) { all.add(k); }
+            }
+            Collections.sort(all);
+            int n = chains == 2 ? IntChains.mergeSorted(heads[0], heads[1]) : IntChains.mergeSorted(heads, chains);
+            if(!keysOf(n).equals(all)) {
+                System.out.println("ERROR: merging sorted chains gave " + keysOf(n) + ".");
+                return 9999971;
+            }
+            int k = rng.nextInt(32);
+            int rest = IntChains.splitAtKey(n, k);
+            int index = rng.nextInt(all.size() + 2);
+            List<Integer> low = rest == n ? new ArrayList<>() : keysOf(n);
+            if(!low.equals(all.subList(0, low.size())) || !keysOf(rest).equals(all.subList(low.size(), all.size()))
+            || low.size() < all.size() && all.get(low.size()) < k || low.size() > 0 && low.get(low.size() - 1) >= k) {
+                System.out.println("ERROR: splitAtKey(" + k + ") did not cut the chain at the right node.");
+                return 9999970;
+            }
+            n = IntChains.concat(rest == n ? 0 : n, IntChains.last(rest == n ? 0 : n), rest);
+            rest = IntChains.splitAt(n, index);
+            int cut = Math.max(0, Math.min(index, all.size()));
+            if(!keysOf(rest).equals(all.subList(cut, all.size())) || rest != n && !keysOf(n).equals(all.subList(0, cut))) {
+                System.out.println("ERROR: splitAt(" + index + ") did not cut the chain at the right node.");
+                return 9999969;
+            }
+            n = IntChains.concat(rest == n ? 0 : n, IntChains.last(rest == n ? 0 : n), rest);
+            n = IntChains.dedupeSorted(n);
+            List<Integer> distinct = new ArrayList<>(new TreeSet<>(all));
+            if(!keysOf(n).equals(distinct) || IntList.getAllocatedNodeCount() != distinct.size()) {
+                System.out.println("ERROR: dedupeSorted left " + keysOf(n) + ".");
+                return 9999968;
+            }
+            Collections.shuffle(distinct, rng);
+            IntList.release(n);
+            n = IntList.allocate(distinct.stream().mapToInt(Integer::intValue).toArray());
+            int d = rng.nextInt(4) + 2;
+            int count = IntChains.partition(n, key -> key % d == 0, parts);
+            List<Integer> yes = new ArrayList<>(), no = new ArrayList<>();
+            for(int key: distinct) { (key % d == 0 ? yes : no).add(key); }
+            if(count != yes.size() || !keysOf(parts[0]).equals(yes) || !keysOf(parts[1]).equals(no)) {
+                System.out.println("ERROR: partition did not keep the order of the nodes.");
+                return 9999967;
+            }
+            IntList.release(parts[0]);
+            IntList.release(parts[1]);
+        }
+        return 0;
+    }
+
+    // Drive a few chain handles with random operations and check their cached head, tail
+    // and length against the chains and against shadow lists.
+    public static int testIntChain(int seed, int rounds, int size) {
+        Random rng = new Random(seed);
+        IntList.initialize(size + 1);
+        IntChain[] chains = { new IntChain(), new IntChain(new int[] {1, 2, 3}), new IntChain() };
+        List<List<Integer>> shadows = new ArrayList<>();
+        shadows.add(new ArrayList<>());
+        shadows.add(new ArrayList<>(Arrays.asList(1, 2, 3)));
+        shadows.add(new ArrayList<>());
+        for(int i = 0; i < rounds; i++) {
+            int c = rng.nextInt(chains.length), op = rng.nextInt(10);
+            IntChain chain = chains[c];
+            List<Integer> shadow = shadows.get(c);
+            int k = rng.nextInt(1000);
+            if(op < 4 && IntList.getAllocatedNodeCount() < size) { chain.append(k); shadow.add(k); }
+            else if(op < 6 && IntList.getAllocatedNodeCount() < size) { chain.prepend(k); shadow.add(0, k); }
+            else if(op == 6 && !chain.isEmpty()) {
+                if(chain.removeFirst() != shadow.remove(0)) {
+                    System.out.println("ERROR: removeFirst returned the wrong key.");
+                    return 9999966;
+                }
+            }
+            else if(op == 7) {
+                int d = (c + 1) % chains.length;
+                chain.concat(chains[d]);
+                shadow.addAll(shadows.get(d));
+                shadows.get(d).clear();
+            }
+            else if(op == 8) { chain.sort(); Collections.sort(shadow); }
+            else if(op == 9 && rng.nextInt(10) == 0) {
+                if(chain.releaseAll() != shadow.size()) {
+                    System.out.println("ERROR: releaseAll released the wrong number of nodes.");
+                    return 9999965;
+                }
+                shadow.clear();
+            }
+            if(!keysOf(chain.getHead()).equals(shadow) || chain.size() != shadow.size()
+            || chain.getTail() != IntChains.last(chain.getHead())) {
+                System.out.println("ERROR: chain handle " + chain + " does not match " + shadow + ".");
+                return 9999964;
+            }
+        }
+        for(IntChain chain: chains) { chain.releaseAll(); }
+        if(IntList.getAllocatedNodeCount() != 0) {
+            System.out.println("ERROR: chain handles lost track of " + IntList.getAllocatedNodeCount() + " nodes.");
+            return 9999963;
+        }
+        return 0;
+    }
+
+    // Search, insert into and remove from an indexed sorted chain, checking the chain and
+    // the answers against a sorted shadow list.
+    public static int testSkipList(int seed, int rounds, int size) {
+        Random rng = new Random(seed);
+        IntListPool pool = new IntListPool(1);
+        int[] data = new int[rng.nextInt(size) + 1];
+        for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(2 * size); }
+        Arrays.sort(data);
+        SkipListIndex index = new SkipListIndex(pool, pool.allocate(data), seed);
+        List<Integer> shadow = new ArrayList<>();
+        for(int k: data) { shadow.add(k); }
+        for(int i = 0; i < rounds; i++) {
+            int k = rng.nextInt(2 * size + 2) - 1;
+            int op = rng.nextInt(3);
+            int pos = Collections.binarySearch(shadow, k);
+            while(pos > 0 && shadow.get(pos - 1) == k) { pos--; }
+            if(op == 0) {
+                int n = index.ceiling(k);
+                int at = pos >= 0 ? pos : -pos - 1;
+                boolean found = at == shadow.size() ? n == 0 : n != 0 && pool.getKey(n) == shadow.get(at);
+                if(!found || index.contains(k) != pos >= 0) {
+                    System.out.println("ERROR: skip list search for " + k + " found the wrong node.");
+                    return 9999962;
+                }
+            }
+            else if(op == 1) {
+                index.insert(k);
+                shadow.add(pos >= 0 ? pos : -pos - 1, k);
+            }
+            else if(index.remove(k) != pos >= 0) {
+                System.out.println("ERROR: skip list removal of " + k + " disagrees with the chain.");
+                return 9999961;
+            }
+            else if(pos >= 0) {
+                shadow.remove(pos);
+            }
+        }
+        index.dispose();
+        if(!sameKeys(pool, index.getHead(), shadow) || index.size() != shadow.size()
+        || pool.getAllocatedNodeCount() != shadow.size()) {
+            System.out.println("ERROR: skip list operations corrupted the chain.");
+            return 9999960;
+        }
+        return 0;
+    }
+
+    // Freeze chains of checked and unchecked pools and check that exactly their keys are
+    // protected, including while another thread sorts a frozen chain.
+    public static int testFreeze(int seed, int size) throws InterruptedException {
+        Random rng = new Random(seed);
+        for(IntListPool pool: new IntListPool[] {new IntListPool(1), new UncheckedIntListPool(1)}) {
+            int[] data = new int[size + 1];
+            for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(); }
+            int a = pool.allocate(data), b = pool.allocate(data);
+            long first = pool.freeze(a), second = pool.freeze(a);
+            pool.setKey(b, 1);
+            if(!setKeyFails(pool, a)) {
+                System.out.println("ERROR: setKey changed the key of a frozen chain.");
+                return 9999959;
+            }
+            pool.unfreeze(a, first);
+            if(!setKeyFails(pool, a)) {
+                System.out.println("ERROR: ending one of two freezes unfroze the chain.");
+                return 9999958;
+            }
+            try {
+                pool.unfreeze(b, second);
+                System.out.println("ERROR: a chain was unfrozen with the stamp of another chain.");
+                return 9999957;
+            }
+            catch(IllegalStateException e) { }
+            // A frozen chain of the same length is still not the chain frozen under a stamp,
+            // and no frozen chain can be released, in one go or by splicing.
+            int c = pool.allocate(data), last = c;
+            while(pool.getNext(last) != 0) { last = pool.getNext(last); }
+            long third = pool.freeze(c);
+            try {
+                pool.unfreeze(c, second);
+                System.out.println("ERROR: a chain was unfrozen with the stamp of a chain of the same length.");
+                return 9999952;
+            }
+            catch(IllegalStateException e) { }
+            try {
+                pool.release(c);
+                System.out.println("ERROR: a frozen chain was released.");
+                return 9999951;
+            }
+            catch(IllegalStateException e) { }
+            try {
+                pool.release(c, last, data.length);
+                System.out.println("ERROR: a frozen chain was released by splicing.");
+                return 9999950;
+            }
+            catch(IllegalStateException e) { }
+            // An unfrozen node appended to a frozen chain makes it a different chain.
+            int d = pool.allocate(0);
+            pool.setNext(last, d);
+            try {
+                pool.unfreeze(c, third);
+                System.out.println("ERROR: a frozen chain was unfrozen with an extra node appended.");
+                return 9999940;
+            }
+            catch(IllegalStateException e) { }
+            pool.setNext(last, 0);
+            pool.unfreeze(c, third);
+            if(setKeyFails(pool, d) || pool.isFrozen(d)) {
+                System.out.println("ERROR: unfreezing changed the freeze count of a node outside the chain.");
+                return 9999939;
+            }
+            // A checked pool refuses to freeze a chain that runs into a released node, and
+            // freezes none of its nodes.
+            if(!(pool instanceof UncheckedIntListPool)) {
+                pool.setNext(d, pool.allocate(0));
+                pool.release(pool.getNext(d));
+                try {
+                    pool.freeze(d);
+                    System.out.println("ERROR: a chain with a released node was frozen.");
+                    return 9999938;
+                }
+                catch(IllegalStateException e) { }
+                pool.setNext(d, 0);
+                if(pool.isFrozen(d)) {
+                    System.out.println("ERROR: a failed freeze left a node frozen.");
+                    return 9999937;
+                }
+            }
+            pool.release(d);
+            pool.release(c);
+            // Relinking a frozen chain is allowed, and so is changing other keys meanwhile.
+            int[] reversed = new int[1];
+            Thread relinker = new Thread(() -> {
+                for(int m = a; m != 0;) {
+                    int next = pool.setNext(m, reversed[0]);
+                    reversed[0] = m;
+                    m = next;
+                }
+            });
+            relinker.start();
+            for(int m = b; m != 0; m = pool.getNext(m)) { pool.setKey(m, 0); }
+            relinker.join();
+            pool.unfreeze(reversed[0], second);
+            pool.setKey(reversed[0], 1);
+            pool.release(reversed[0]);
+            pool.release(b);
+            // With every freeze ended, the pool can be compacted again.
+            pool.compact(new int[0]);
+        }
+        return 0;
+    }
+
+    private static boolean setKeyFails(IntListPool pool, int n) {
+        try {
+            pool.setKey(n, 0);
+            return false;
+        }
+        catch(IllegalStateException e) {
+            return true;
+        }
+    }
+
+    // Share one persistent list between threads that each extend and drop it many times,
+    // and check that they all see the right keys and that every cell is reclaimed.
+    public static int testPersistent(int seed, int threads, int rounds, int size) throws InterruptedException {
+        Random rng = new Random(seed);
+        for(boolean checked: new boolean[] {true, false}) {
+            PersistentIntList store = new PersistentIntList(1, checked);
+            int[] data = new int[size];
+            for(int j = 0; j < size; j++) { data[j] = rng.nextInt(); }
+            int shared = store.of(data);
+            int[] errors = new int[threads];
+            Thread[] workers = new Thread[threads];
+            for(int t = 0; t < threads; t++) {
+                final int id = t;
+                final int mine = store.retain(shared);
+                workers[t] = new Thread(() -> {
+                    Random r = new Random(seed + id);
+                    int[] held = new int[4];
+                    for(int i = 0; i < rounds; i++) {
+                        int slot = r.nextInt(held.length);
+                        store.release(held[slot]);
+                        held[slot] = 0;
+                        int n = r.nextBoolean() ? mine : held[r.nextInt(held.length)];
+                        n = store.cons(id, n);
+                        held[slot] = n;
+                        while(n != 0 && store.head(n) == id) { n = store.tail(n); }
+                        if(n != 0 && (n != mine || !Arrays.equals(store.toArray(n), data))) { errors[id]++; }
+                    }
+                    for(int h: held) { store.release(h); }
+                    store.release(mine);
+                });
+                workers[t].setUncaughtExceptionHandler((w, e) -> {
+                    System.out.println("Exception caught in worker: " + e);
+                    errors[id]++;
+                });
+            }
+            for(Thread w: workers) { w.start(); }
+            store.release(shared);
+            for(Thread w: workers) { w.join(); }
+            for(int e: errors) {
+                if(e > 0) {
+                    System.out.println("ERROR: a thread saw a shared persistent list change.");
+                    return 9999956;
+                }
+            }
+            if(store.getLiveCellCount() != 0) {
+                System.out.println("ERROR: " + store.getLiveCellCount() + " persistent list cells were never reclaimed.");
+                return 9999955;
+            }
+            // Consing onto a reclaimed list fails without keeping the new cell.
+            int gone = store.cons(1, 0);
+            store.release(gone);
+            for(int k = 2; k <= 3; k++) {
+                try {
+                    store.cons(k, gone);
+                    System.out.println("ERROR: a persistent list was extended after it was reclaimed.");
+                    return 9999944;
+                }
+                catch(IllegalStateException e) { }
+            }
+            if(store.getLiveCellCount() != 0) {
+                System.out.println("ERROR: a failed cons kept its cell.");
+                return 9999943;
+            }
+        }
+        return 0;
+    }
+
+    // Filter random chains with removeIf and check the survivors, and that the removed
+    // nodes went back to the pool.
+    public static int testRemoveIf(int seed, int rounds, int size) {
+        Random rng = new Random(seed);
+        IntList.initialize(size + 1);
+        for(int i = 0; i < rounds; i++) {
+            int[] data = new int[rng.nextInt(size + 1)];
+            for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(20); }
+            int lo = rng.nextInt(20), hi = lo + rng.nextInt(20);
+            int n = IntList.allocate(data);
+            n = IntListMethods.removeIf(n, k -> k >= lo && k < hi);
+            List<Integer> kept = new ArrayList<>();
+            for(int k: data) { if(k < lo || k >= hi) { kept.add(k); } }
+            if(!sameKeys(IntList.getPool(), n, kept)) {
+                System.out.println("ERROR: removeIf kept the wrong keys.");
+                return 9999973;
+            }
+            if(IntList.getPool().getAllocatedNodeCount() != kept.size()) {
+                System.out.println("ERROR: removeIf did not release the removed nodes.");
+                return 9999972;
+            }
+            IntList.release(n);
+        }
+        // Nodes of a frozen chain cannot be removed, but the nodes before it can.
+        int n = IntList.allocate(new int[] {1, 2, 3});
+        long stamp = IntList.freeze(IntList.getNext(n));
+        try {
+            IntListMethods.removeIf(n, k -> k == 3);
+            System.out.println("ERROR: removeIf removed a node of a frozen chain.");
+            return 9999949;
+        }
+        catch(IllegalStateException e) { }
+        if(!sameKeys(IntList.getPool(), n, Arrays.asList(1, 2, 3))) {
+            System.out.println("ERROR: a failed removeIf changed the chain.");
+            return 9999948;
+        }
+        n = IntListMethods.removeIf(n, k -> k == 1);
+        IntList.unfreeze(n, stamp);
+        IntList.release(n);
+        return 0;
+    }
+
+    // Run random operations on unrolled chains and compare them against plain lists.
+    public static int testUnrolled(int seed, int rounds, int size) {
+        Random rng = new Random(seed);
+        UnrolledIntList pool = new UnrolledIntList(1, 1 + rng.nextInt(32));
+        int[] data = new int[rng.nextInt(size) + 1];
+        for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(50); }
+        int n = pool.allocate(data);
+        List<Integer> shadow = new ArrayList<>();
+        for(int k: data) { shadow.add(k); }
+        for(int i = 0; i < rounds; i++) {
+            int op = rng.nextInt(4);
+            if(op == 0) {
+                n = pool.reverse(n);
+                Collections.reverse(shadow);
+            }
+            else if(op == 1) {
+                int k = rng.nextInt(50);
+                n = pool.removeFirst(n, k);
+                shadow.remove(Integer.valueOf(k));
+            }
+            else if(op == 2) {
+                int d = rng.nextInt(20) + 2;
+                int lo = rng.nextInt(60) - 5, hi = lo + rng.nextInt(10);
+                switch(rng.nextInt(4)) {
+                    case 0: n = pool.removeIf(n, k -> k % d == 0); shadow.removeIf(k -> k % d == 0); break;
+                    case 1: n = pool.removeIfDivisible(n, d); shadow.removeIf(k -> k % d == 0); break;
+                    case 2: n = pool.removeIfEquals(n, lo); shadow.removeIf(k -> k == lo); break;
+                    default: n = pool.removeIfInRange(n, lo, hi); shadow.removeIf(k -> k >= lo && k <= hi);
+                }
+            }
+            else {
+                n = pool.sort(n);
+                Collections.sort(shadow);
+            }
+            if(!pool.toString(n).equals(shadow.toString())) {
+                System.out.println("ERROR: unrolled chain " + pool.toString(n) + " should be " + shadow);
+                return 9999978;
+            }
+            if(shadow.isEmpty()) {
+                for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(50); shadow.add(data[j]); }
+                n = pool.allocate(data);
+            }
+        }
+        pool.release(n);
+        if(pool.getAllocatedNodeCount() != 0) {
+            System.out.println("ERROR: Memory leak of " + pool.getAllocatedNodeCount() + " unrolled nodes.");
+            return 9999977;
+        }
+        return 0;
+    }
+
+    // Compute a simple XOR checksum of the indices of the nodes hanging from n.
+    private static long checksum(int n) {
+        int check = 0;
+        while(n != 0) {
+            check = check ^ n;
+            n = IntList.getNext(n);
+        }
+        return check;
+    }
+
+    // Sort random chains with the parallel sort on several pool sizes and check that the
+    // result is sorted, stable and consists of the original nodes.
+    public static int testParallelSort(int seed, int size) {
+        Random rng = new Random(seed);
+        for(int parallelism = 1; parallelism <= 4; parallelism++) {
+            ForkJoinPool workers = new ForkJoinPool(parallelism);
+            int[] data = new int[size];
+            for(int j = 0; j < size; j++) { data[j] = rng.nextInt(size / 4 + 1); }
+            IntList.initialize(size);
+            int n = IntList.allocate(data);
+            long check = checksum(n);
+            IntList.lockKeys(seed + 1);
+            n = IntListMethods.parallelSort(n, workers);
+            IntList.unlockKeys(seed + 1);
+            workers.shutdown();
+            if(checksum(n) != check) {
+                System.out.println("ERROR: parallel sort does not rearrange the nodes in place.");
+                return 9999976;
+            }
+            int count = 0;
+            for(int m = n, prev = 0; m != 0; prev = m, m = IntList.getNext(m), count++) {
+                if(prev != 0 && (IntList.getKey(prev) > IntList.getKey(m)
+                || IntList.getKey(prev) == IntList.getKey(m) && prev > m)) {
+                    System.out.println("ERROR: parallel sort result is not sorted or not stable.");
+                    return 9999975;
+                }
+            }
+            if(count != size) {
+                System.out.println("ERROR: parallel sort changed the length of the chain.");
+                return 9999974;
+            }
+            IntList.release(n);
+        }
+        return 0;
+    }
+
+    // Check the metrics of a pool after a known sequence of operations, both directly and
+    // through the platform MBean server.
+    public static int testMetrics() throws JMException, InterruptedException {
+        IntListPool pool = new IntListPool(16);
+        IntListPoolMetrics metrics = pool.getMetrics();
+        int a = pool.allocate(new int[] {1, 2, 3, 4, 5});
+        int b = pool.allocate(new int[] {6, 7, 8});
+        pool.release(b);
+        pool.allocate(9);
+        IntListPoolMetrics.Snapshot snap = metrics.snapshot();
+        if(snap.allocationCount != 9 || snap.releaseCount != 3
+        || snap.allocatedNodeCount != 6 || snap.peakAllocatedNodeCount != 8
+        || snap.freeListLength != 2 || snap.highWaterMark != 9) {
+            System.out.println("ERROR: wrong metrics " + snap);
+            return 9999984;
+        }
+        // Accessor calls are only counted while counting is on, but then from any thread.
+        IntListPool counted = new IntListPool(64);
+        int c = counted.allocate(new int[64]);
+        counted.getKey(c);
+        counted.getMetrics().setAccessCounting(true);
+        Thread reader = new Thread(() -> {
+            for(int m = c; m != 0; m = counted.getNext(m)) { counted.getKey(m); }
+        });
+        reader.start();
+        for(int m = c; m != 0; m = counted.getNext(m)) { counted.getKey(m); }
+        reader.join();
+        if(counted.getMetrics().getGetKeyCount() != 128 || counted.getMetrics().getGetNextCount() != 128) {
+            System.out.println("ERROR: " + counted.getMetrics().getGetKeyCount() + " getKey calls counted instead of 128.");
+            return 9999954;
+        }
+        metrics.register("test");
+        try {
+            Object value = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName("IntListPool:name=\"test\""), "AllocatedNodeCount");
+            if(!Integer.valueOf(6).equals(value)) {
+                System.out.println("ERROR: JMX reports " + value + " allocated nodes.");
+                return 9999983;
+            }
+        }
+        finally {
+            metrics.unregister("test");
+        }
+        metrics.reset();
+        if(metrics.getAllocationCount() != 0 || metrics.getPeakAllocatedNodeCount() != 6) {
+            System.out.println("ERROR: reset did not clear the metrics.");
+            return 9999982;
+        }
+        return 0;
+    }
+
+    // Build, traverse and release random chains in an off-heap pool that starts out tiny,
+    // and check that released nodes are recycled before the pool grows.
+    public static int testOffHeap(int seed, int rounds, int size) {
+        Random rng = new Random(seed);
+        OffHeapIntList pool = new OffHeapIntList(1);
+        for(int i = 0; i < rounds; i++) {
+            int[] data = new int[rng.nextInt(size) + 1];
+            for(int j = 0; j < data.length; j++) { data[j] = rng.nextInt(); }
+            long head = pool.allocate(data), n = head;
+            for(int j = 0; j < data.length; j++) {
+                if(n == 0 || pool.getKey(n) != data[j]) {
+                    System.out.println("ERROR: off-heap chain has wrong keys.");
+                    return 9999992;
+                }
+                n = pool.getNext(n);
+            }
+            long capacity = pool.getCapacity();
+            pool.release(head);
+            pool.release(pool.allocate(data));
+            if(pool.getCapacity() != capacity) {
+                System.out.println("ERROR: off-heap pool grew instead of reusing released nodes.");
+                return 9999991;
+            }
+        }
+        if(pool.getAllocatedNodeCount() != 0) {
+            System.out.println("ERROR: Memory leak of " + pool.getAllocatedNodeCount() + " nodes.");
+            return 9999990;
+        }
+        return 0;
+    }
+
+    // Build chains in a memory-mapped pool, close it, reopen it from the file and check
+    // that the chains and the allocator state survived.
+    public static int testMapped(int seed, int rounds, int size) throws IOException {
+        Random rng = new Random(seed);
+        Path file = Files.createTempFile("intlist", ".pool");
+        try {
+            long[] heads = new long[rounds];
+            int[][] data = new int[rounds][];
+            MappedIntList pool = MappedIntList.create(file, 1);
+            for(int i = 0; i < rounds; i++) {
+                data[i] = new int[rng.nextInt(size) + 1];
+                for(int j = 0; j < data[i].length; j++) { data[i][j] = rng.nextInt(); }
+                heads[i] = pool.allocate(data[i]);
+                if(i % 2 == 1) { pool.release(heads[i - 1]); heads[i - 1] = 0; }
+            }
+            long allocated = pool.getAllocatedNodeCount();
+            pool.close();
+            pool = MappedIntList.open(file);
+            if(pool.getAllocatedNodeCount() != allocated) {
+                System.out.println("ERROR: reopened pool has " + pool.getAllocatedNodeCount() + " nodes.");
+                return 9999989;
+            }
+            for(int i = 0; i < rounds; i++) {
+                if(heads[i] == 0) { continue; }
+                long n = heads[i];
+                for(int k: data[i]) {
+                    if(n == 0 || pool.getKey(n) != k) {
+                        System.out.println("ERROR: chain " + i + " differs after reopening.");
+                        return 9999988;
+                    }
+                    n = pool.getNext(n);
+                }
+                pool.release(heads[i]);
+            }
+            // The file follows the pool without a close, as when the process is killed.
+            long a = pool.allocate(data[0]);
+            MappedIntList other = MappedIntList.open(file);
+            if(other.getAllocatedNodeCount() != data[0].length || other.getKey(a) != data[0][0]) {
+                System.out.println("ERROR: pool opened without a close has " + other.getAllocatedNodeCount() + " nodes.");
+                return 9999953;
+            }
+            other.close();
+            // A process that stops between a release and the header update leaves the
+            // released nodes unreachable, but the pool still opens, and recover reclaims them.
+            ByteBuffer header = ByteBuffer.allocate(MappedIntList.HEADER_BYTES);
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long b = pool.allocate(data[1 % rounds]);
+                channel.read(header, 0);
+                pool.release(b);
+                header.flip();
+                channel.write(header, 0);
+            }
+            pool.close();
+            pool = MappedIntList.open(file);
+            for(long n = a, i = 0; i < data[0].length; n = pool.getNext(n), i++) {
+                if(pool.getKey(n) != data[0][(int)i]) {
+                    System.out.println("ERROR: chain differs after a lost header update.");
+                    return 9999934;
+                }
+            }
+            pool.close();
+            pool = MappedIntList.recover(file);
+            if(pool.getAllocatedNodeCount() != data[0].length) {
+                System.out.println("ERROR: recovered pool has " + pool.getAllocatedNodeCount() + " nodes.");
+                return 9999933;
+            }
+            pool.release(pool.allocate(new int[(int)pool.getCapacity()]));
+            pool.release(a);
+            pool.close();
+            MappedIntList.open(file).close();
+        }
+        finally {
+            Files.delete(file);
+        }
+        return 0;
+    }
+
+    // Several threads allocate chains tagged with their own id from one concurrent pool,
+    // hold on to them for a while and check that no other thread was handed the same nodes.
+    // Half of the threads terminate without flushing their magazines, after which all nodes
+    // of the pool must still be available.
+    public static int testConcurrent(int seed, int threads, int rounds, int size) throws InterruptedException {
+        ConcurrentIntListPool pool = new ConcurrentIntListPool(threads * size * 16 + 1, 32);
+        int[] errors = new int[threads];
+        Thread[] workers = new Thread[threads];
+        for(int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                Random rng = new Random(seed + id);
+                int[] held = new int[8];
+                for(int i = 0; i < rounds; i++) {
+                    int slot = rng.nextInt(held.length);
+                    int n = held[slot];
+                    while(n != 0) {
+                        if(pool.getKey(n) != id) { errors[id]++; }
+                        n = pool.getNext(n);
+                    }
+                    pool.release(held[slot]);
+                    int[] data = new int[rng.nextInt(size) + 1];
+                    Arrays.fill(data, id);
+                    held[slot] = pool.allocate(data);
+                }
+                for(int h: held) { pool.release(h); }
+                if(id % 2 == 0) { pool.flush(); }
+            });
+            workers[t].setUncaughtExceptionHandler((w, e) -> {
+                System.out.println("Exception caught in worker: " + e);
+                errors[id]++;
+            });
+        }
+        for(Thread w: workers) { w.start(); }
+        for(Thread w: workers) { w.join(); }
+        for(int e: errors) {
+            if(e > 0) {
+                System.out.println("ERROR: node handed out to two threads at the same time.");
+                return 9999994;
+            }
+        }
+        if(pool.getAllocatedNodeCount() != 0) {
+            System.out.println("ERROR: Memory leak of " + pool.getAllocatedNodeCount() + " nodes.");
+            return 9999993;
+        }
+        int[] nodes = new int[threads * size * 16];
+        for(int i = 0; i < nodes.length; i++) { nodes[i] = pool.allocate(i); }
+        for(int n: nodes) { pool.release(n); }
+        if(pool.getAllocatedNodeCount() != 0) {
+            System.out.println("ERROR: Nodes not returned to the concurrent pool.");
+            return 9999947;
+        }
+        // A bulk allocation that runs out of space gives back the nodes it had taken, even
+        // when they are more than a magazine holds.
+        ConcurrentIntListPool small = new ConcurrentIntListPool(101, 4);
+        try {
+            small.allocate(new int[200]);
+            System.out.println("ERROR: bulk allocation past the capacity of a concurrent pool succeeded.");
+            return 9999942;
+        }
+        catch(IllegalStateException e) { }
+        small.release(small.allocate(new int[100]));
+        if(small.getAllocatedNodeCount() != 0) {
+            System.out.println("ERROR: failed bulk allocation lost nodes of the concurrent pool.");
+            return 9999941;
+        }
+        // A thread that is still alive lends its spare batch to a thread that runs out.
+        ConcurrentIntListPool lender = new ConcurrentIntListPool(13, 4);
+        CountDownLatch released = new CountDownLatch(1), done = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            lender.release(lender.allocate(new int[12]));
+            released.countDown();
+            try { done.await(); } catch(InterruptedException e) { }
+        });
+        owner.start();
+        released.await();
+        try {
+            lender.release(lender.allocate(new int[4]));
+        }
+        catch(IllegalStateException e) {
+            System.out.println("ERROR: spare batch of a live thread not available.");
+            return 9999932;
+        }
+        finally {
+            done.countDown();
+        }
+        owner.join();
+        return 0;
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException, JMException {
+        if(args.length < 3) {
+            System.out.println("Usage: java IntListPoolTest seed rounds size [verbose]");
+            return;
+        }
+        int seed = Integer.parseInt(args[0]);
+        int rounds = Integer.parseInt(args[1]);
+        int size = Integer.parseInt(args[2]);
+        boolean verbose = args.length > 3 && args[3].toLowerCase().startsWith("t");
+        int result;
+        try {
+            result = testGrowth(seed, rounds, size, verbose);
+            if(result == 0) { result = testBulk(seed, rounds / 10, size); }
+            if(result == 0) { result = testCompact(seed, 5, size); }
+            if(result == 0) { result = testMetrics(); }
+            if(result == 0) { result = testParallelSort(seed, 200000 + size); }
+            if(result == 0) { result = testRemoveIf(seed, rounds / 10, size); }
+            if(result == 0) { result = testChains(seed, rounds / 10, size); }
+            if(result == 0) { result = testIntChain(seed, rounds, size); }
+            if(result == 0) { result = testSkipList(seed, rounds, size); }
+            if(result == 0) { result = testFreeze(seed, size); }
+            if(result == 0) { result = testPersistent(seed, 4, rounds / 10, size); }
+            if(result == 0) { result = testUnrolled(seed, rounds / 10, size); }
+            if(result == 0) { result = testOffHeap(seed, rounds / 10, size); }
+            if(result == 0) { result = testMapped(seed, Math.max(1, rounds / 100), size); }
+            if(result == 0) { result = testConcurrent(seed, 4, rounds, size); }
+        }
+        catch(IllegalStateException e) {
+            System.out.println("Exception caught: " + e);
+            result = 9999995;
+        }
+        System.out.println(result == 0 ? "OK" : "FAILED " + result);
+    }
+}
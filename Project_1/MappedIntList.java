@@ -0,0 +1,177 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An off-heap node pool whose nodes live in a memory-mapped file, so that a pool
+ * survives the process that built it. Opening an existing pool maps the file and
+ * reads a small header, so it takes the same time no matter how many nodes the
+ * pool contains; the operating system pages the nodes in as they are touched.
+ *
+ * The file starts with a header of {@code HEADER_BYTES} bytes that records the format
+ * version, the segment size and the allocator state: the free list head, the high-water
+ * mark and the number of allocated nodes. The node segments follow the header in the
+ * record format of OffHeapIntList. Header and nodes are little-endian whatever the
+ * platform, so a file can be moved between machines.
+ *
+ * The header is written after every change to the allocator state, and the nodes as
+ * soon as they change, so the file follows the pool even if the process is killed
+ * without closing it: the operating system still writes back the mapped pages. The
+ * order of the writes is such that a process that stops in the middle of an allocation
+ * or release only leaves the nodes of that call marked free but unreachable, and never
+ * a node in the free list that is also in use. {@code open} therefore always succeeds on
+ * such a file, and {@code recover} also reclaims the unreachable nodes. Only a crash of
+ * the operating system itself can lose writes that were not flushed by {@code force}.
+ */
+public class MappedIntList extends OffHeapIntList implements Closeable {
+
+    /** Size of the file header in bytes. */
+    public static final int HEADER_BYTES = 64;
+    /** Version of the file format written by this class. */
+    public static final int FORMAT_VERSION = 2;
+    // Identifies the file as a node pool: the characters "ILST".
+    private static final int MAGIC = 0x494C5354;
+
+    // Header field offsets.
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SHIFT_OFFSET = 8;
+    private static final int SEGMENTS_OFFSET = 12;
+    private static final int FREE_HEAD_OFFSET = 16;
+    private static final int HIGH_WATER_OFFSET = 24;
+    private static final int ALLOCATED_OFFSET = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+
+    private MappedIntList(FileChannel channel, int segmentShift) throws IOException {
+        super(segmentShift, 0);
+        this.channel = channel;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a new pool in the given file, replacing any previous contents.
+     * @param file The file to store the pool in.
+     * @param initialCapacity Number of nodes to reserve space for initially.
+     * @return The new pool.
+     * @throws IOException If the file cannot be created or mapped.
+     */
+    public static MappedIntList create(Path file, long initialCapacity) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            int shift = segmentShiftFor(initialCapacity);
+            MappedIntList pool = new MappedIntList(channel, shift);
+            pool.addSegments((int)Math.max(1, (initialCapacity + pool.segmentMask) >>> shift));
+            pool.header.putInt(MAGIC_OFFSET, MAGIC);
+            pool.header.putInt(VERSION_OFFSET, FORMAT_VERSION);
+            pool.header.putInt(SHIFT_OFFSET, shift);
+            pool.allocatorChanged();
+            pool.force();
+            return pool;
+        }
+        catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reopens a pool previously created with {@code create}, in the state after the last
+     * allocation or release that completed in it.
+     * @param file The file that stores the pool.
+     * @return The reopened pool.
+     * @throws IOException If the file cannot be read or is not a node pool of a known version.
+     */
+    public static MappedIntList open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if(channel.size() < HEADER_BYTES) {
+                throw new IOException("File " + file + " is too short to be a node pool.");
+            }
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(head, 0);
+            if(head.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("File " + file + " is not a node pool.");
+            }
+            if(head.getInt(VERSION_OFFSET) != FORMAT_VERSION) {
+                throw new IOException("File " + file + " has unsupported format version "
+                    + head.getInt(VERSION_OFFSET) + ".");
+            }
+            MappedIntList pool = new MappedIntList(channel, head.getInt(SHIFT_OFFSET));
+            pool.addSegments(head.getInt(SEGMENTS_OFFSET));
+            pool.freeHead = head.getLong(FREE_HEAD_OFFSET);
+            pool.highWater = head.getLong(HIGH_WATER_OFFSET);
+            pool.allocatedNodeCount = head.getLong(ALLOCATED_OFFSET);
+            return pool;
+        }
+        catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected ByteBuffer newSegment(int index, int bytes) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long)index * bytes, bytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reopens a pool like {@code open}, and then rebuilds its free list and allocated node
+     * count from the nodes, which reclaims the nodes left unreachable by a process that
+     * stopped in the middle of an allocation or release. This reads every node below the
+     * high-water mark, so it takes time proportional to the size of the pool.
+     * @param file The file that stores the pool.
+     * @return The reopened pool.
+     * @throws IOException If the file cannot be read or is not a node pool of a known version.
+     */
+    public static MappedIntList recover(Path file) throws IOException {
+        MappedIntList pool = open(file);
+        pool.rebuildFreeList();
+        return pool;
+    }
+
+    // The segments go first, so that the stored high-water mark never exceeds them.
+    @Override
+    protected void allocatorChanged() {
+        header.putInt(SEGMENTS_OFFSET, getSegmentCount());
+        header.putLong(HIGH_WATER_OFFSET, highWater);
+        header.putLong(FREE_HEAD_OFFSET, freeHead);
+        header.putLong(ALLOCATED_OFFSET, allocatedNodeCount);
+    }
+
+    /**
+     * Flushes all nodes and then the header to the storage device, so that the pool in
+     * its current state also survives a crash of the operating system.
+     */
+    public void force() {
+        for(int i = 0; i < getSegmentCount(); i++) {
+            ((MappedByteBuffer)getSegment(i)).force();
+        }
+        header.force();
+    }
+
+    /**
+     * Flushes the pool and closes the file. The pool must not be used afterwards.
+     * @throws IOException If closing the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,309 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A node pool whose nodes live outside the Java heap, for chains too large to keep in
+ * int arrays. Node indices are longs, so a pool can hold more than 2^31 nodes, and the
+ * storage is invisible to the garbage collector.
+ *
+ * The key and successor of each node are interleaved in a single record of
+ * {@code NODE_BYTES} bytes, so that following a chain touches one cache line per node
+ * instead of one in each of two separate arrays. Records are stored in direct byte
+ * buffers of equal size, since a single buffer cannot exceed 2 GB. As in IntListPool,
+ * the pool grows by appending new buffers, which never moves the existing nodes.
+ *
+ * Nodes that have never been allocated are handed out by advancing a high-water mark,
+ * and only released nodes go through the free list. Creating a pool therefore takes
+ * constant time regardless of its size. The meaning of the stored successor values is
+ * similar to IntList: index 0 denotes no successor, and a negative value marks a node
+ * in the free list, its bitwise complement being the successor in the free list. Unlike
+ * plain negation, the complement also marks the last node of the free list as free.
+ */
+public class OffHeapIntList {
+
+    // Number of bytes in one node record: key at offset 0, successor at offset 8.
+    protected static final int NODE_BYTES = 16;
+    private static final int KEY_OFFSET = 0;
+    private static final int NEXT_OFFSET = 8;
+    // The largest and smallest segment sizes in nodes, expressed as powers of two.
+    private static final int MAX_SEGMENT_SHIFT = 26;
+    private static final int MIN_SEGMENT_SHIFT = 6;
+
+    // Node index n lives in segment n >>> segmentShift at record n & segmentMask.
+    protected final int segmentShift;
+    protected final long segmentMask;
+    private ByteBuffer[] segments;
+    private int segmentCount;
+
+    // Position of the first node in the free list, 0 if the free list is empty.
+    protected long freeHead = 0;
+    // Nodes at this index and above have never been allocated. Slot 0 is never used.
+    protected long highWater = 1;
+    // Current number of allocated nodes.
+    protected long allocatedNodeCount = 0;
+
+    /**
+     * Creates a new off-heap pool with room for the given number of nodes. The pool
+     * grows past this size as needed.
+     * @param initialCapacity Number of nodes to reserve space for initially.
+     */
+    public OffHeapIntList(long initialCapacity) {
+        this(segmentShiftFor(initialCapacity), 0);
+        addSegments((int)Math.max(1, (initialCapacity + segmentMask) >>> segmentShift));
+    }
+
+    /**
+     * Creates a pool with the given segment size. Subclasses that keep their nodes in some
+     * other storage pass zero initial segments here, and then call {@code addSegments} once
+     * they are ready to create them.
+     * @param segmentShift Base two logarithm of the number of nodes in one segment.
+     * @param initialSegments Number of segments to create immediately.
+     */
+    protected OffHeapIntList(int segmentShift, int initialSegments) {
+        if(segmentShift < MIN_SEGMENT_SHIFT || segmentShift > MAX_SEGMENT_SHIFT) {
+            throw new IllegalArgumentException("Unsupported segment size 2^" + segmentShift);
+        }
+        this.segmentShift = segmentShift;
+        segmentMask = (1L << segmentShift) - 1;
+        segments = new ByteBuffer[Math.max(1, initialSegments)];
+        addSegments(initialSegments);
+    }
+
+    /**
+     * Returns the segment size to use for a pool of the given initial capacity.
+     * @param initialCapacity Number of nodes to reserve space for initially.
+     * @return Base two logarithm of the number of nodes in one segment.
+     */
+    protected static int segmentShiftFor(long initialCapacity) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("Negative initial capacity " + initialCapacity);
+        }
+        int shift = MIN_SEGMENT_SHIFT;
+        while(shift < MAX_SEGMENT_SHIFT && (1L << shift) < initialCapacity) { shift++; }
+        return shift;
+    }
+
+    /**
+     * Creates the storage for one segment. The default implementation allocates a
+     * direct buffer in the native byte order; subclasses can place the segments elsewhere,
+     * for example in a file, where a fixed byte order keeps the file portable.
+     * @param index The position of the segment in this pool.
+     * @param bytes The size of the segment in bytes.
+     * @return A buffer of the given size, filled with zeros, in the byte order to use.
+     */
+    protected ByteBuffer newSegment(int index, int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Called after every change to the allocator state, that is, the free list head, the
+     * high-water mark and the allocated node count. The default implementation does
+     * nothing; a subclass that persists the pool can store the new state here. A node
+     * that is allocated is still marked free when this is called, and a node that is
+     * released is already marked free, so a persisted state never lists a node as free
+     * that is in use, whatever point the process stops at.
+     */
+    protected void allocatorChanged() { }
+
+    /**
+     * Returns the current number of allocated nodes.
+     * @return The current number of allocated nodes.
+     */
+    public long getAllocatedNodeCount() {
+        return allocatedNodeCount;
+    }
+
+    /**
+     * Returns the number of node slots currently reserved by this pool.
+     * @return The current capacity of this pool.
+     */
+    public long getCapacity() {
+        return (long)segmentCount << segmentShift;
+    }
+
+    /**
+     * Returns the number of segments currently in use.
+     * @return The number of segments.
+     */
+    protected int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Returns the segment at the given position.
+     * @param index The position of the segment.
+     * @return The buffer holding that segment.
+     */
+    protected ByteBuffer getSegment(int index) {
+        return segments[index];
+    }
+
+    /**
+     * Appends the given number of new segments to the pool.
+     * @param count Number of segments to add.
+     */
+    protected void addSegments(int count) {
+        if(segmentCount + count > segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(segmentCount + count, 2 * segments.length));
+        }
+        int bytes = (int)((segmentMask + 1) * NODE_BYTES);
+        for(int i = 0; i < count; i++) {
+            segments[segmentCount] = newSegment(segmentCount, bytes);
+            segmentCount++;
+        }
+    }
+
+    // The byte offset of the record of node n within its segment.
+    private int offset(long n) {
+        return (int)(n & segmentMask) * NODE_BYTES;
+    }
+
+    private ByteBuffer segment(long n) {
+        return segments[(int)(n >>> segmentShift)];
+    }
+
+    // Verify that the node n really exists and has been allocated for use.
+    private void verifyIndex(long n) {
+        if(n < 1 || n >= highWater || segment(n).getLong(offset(n) + NEXT_OFFSET) < 0) {
+            throw new IllegalStateException("Node " + n + " is not currently allocated for use.");
+        }
+    }
+
+    /**
+     * Returns the key of node {@code n}.
+     * @param n The index of node whose key is read.
+     * @return The key of node {@code n}.
+     */
+    public int getKey(long n) {
+        verifyIndex(n);
+        return segment(n).getInt(offset(n) + KEY_OFFSET);
+    }
+
+    /**
+     * Returns the successor of node {@code n}.
+     * @param n The index of node whose successor is read.
+     * @return The successor of node {@code n}.
+     */
+    public long getNext(long n) {
+        verifyIndex(n);
+        return segment(n).getLong(offset(n) + NEXT_OFFSET);
+    }
+
+    /**
+     * Assigns a new key to node {@code n}.
+     * @param n The index of node whose key is assigned.
+     * @param k The new key of the node.
+     * @return The previous key of node {@code n} before this assignment.
+     */
+    public int setKey(long n, int k) {
+        verifyIndex(n);
+        ByteBuffer s = segment(n);
+        int result = s.getInt(offset(n) + KEY_OFFSET);
+        s.putInt(offset(n) + KEY_OFFSET, k);
+        return result;
+    }
+
+    /**
+     * Assigns a new successor node to node {@code n}.
+     * @param n The index of node whose successor is assigned.
+     * @param m The new successor of the node.
+     * @return The previous successor of node {@code n} before this assignment.
+     */
+    public long setNext(long n, long m) {
+        verifyIndex(n);
+        ByteBuffer s = segment(n);
+        long result = s.getLong(offset(n) + NEXT_OFFSET);
+        s.putLong(offset(n) + NEXT_OFFSET, m);
+        return result;
+    }
+
+    /**
+     * Allocates a new node with the given key, growing the pool if necessary.
+     * @param k The key for the new node.
+     * @return The index of the new allocated node.
+     */
+    public long allocate(int k) {
+        long n;
+        if(freeHead != 0) {
+            n = freeHead;
+            freeHead = ~segment(n).getLong(offset(n) + NEXT_OFFSET);
+        }
+        else {
+            if(highWater == getCapacity()) { addSegments(segmentCount); }
+            n = highWater++;
+            // Mark the new node free until it is handed out, like a node from the free list.
+            segment(n).putLong(offset(n) + NEXT_OFFSET, ~0L);
+        }
+        allocatedNodeCount++;
+        allocatorChanged();
+        ByteBuffer s = segment(n);
+        s.putInt(offset(n) + KEY_OFFSET, k);
+        s.putLong(offset(n) + NEXT_OFFSET, 0);
+        return n;
+    }
+
+    /**
+     * Allocates a chain of nodes for the keys in the parameter array.
+     * @param keys The array of keys to convert into a linked list.
+     * @return The index of the first node of the chain.
+     */
+    public long allocate(int[] keys) {
+        long prev = 0;
+        for(int i = keys.length - 1; i >= 0; i--) {
+            long n = allocate(keys[i]);
+            segment(n).putLong(offset(n) + NEXT_OFFSET, prev);
+            prev = n;
+        }
+        return prev;
+    }
+
+    /**
+     * Releases the entire chain of nodes from the starting node. If you want to
+     * release just one node, set its successor to 0 before calling this method.
+     * @param n The first node of the chain to release.
+     * @return The number of nodes that were released.
+     */
+    public long release(long n) {
+        long count = 0;
+        try {
+            while(n != 0) {
+                verifyIndex(n);
+                ByteBuffer s = segment(n);
+                long m = s.getLong(offset(n) + NEXT_OFFSET);
+                s.putLong(offset(n) + NEXT_OFFSET, ~freeHead);
+                freeHead = n;
+                n = m;
+                allocatedNodeCount--;
+                count++;
+            }
+        }
+        finally {
+            if(count > 0) { allocatorChanged(); }
+        }
+        return count;
+    }
+
+    /**
+     * Rebuilds the free list and the allocated node count from the nodes themselves: every
+     * node below the high-water mark that is marked free goes into the free list, and all
+     * other nodes count as allocated. This reclaims the nodes that were marked free but not
+     * yet linked into the free list when a process stopped in the middle of an operation.
+     * @return The number of nodes in the rebuilt free list.
+     */
+    protected long rebuildFreeList() {
+        long free = 0;
+        freeHead = 0;
+        for(long n = highWater - 1; n >= 1; n--) {
+            ByteBuffer s = segment(n);
+            if(s.getLong(offset(n) + NEXT_OFFSET) < 0) {
+                s.putLong(offset(n) + NEXT_OFFSET, ~freeHead);
+                freeHead = n;
+                free++;
+            }
+        }
+        allocatedNodeCount = highWater - 1 - free;
+        allocatorChanged();
+        return free;
+    }
+}
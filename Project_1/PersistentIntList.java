@@ -0,0 +1,216 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A store of immutable lists of int keys that can be shared freely between threads.
+ * Each list is a chain of cells in a node pool, and a list is represented by the index
+ * of its first cell, 0 being the empty list. Cells are never modified after they are
+ * created, so prepending a key to a list creates one new cell that shares the whole
+ * existing list as its tail, and a list handed to any number of reader threads can be
+ * read by all of them without copying and without locks.
+ *
+ * Instead of being released explicitly, cells are reference counted. Creating a list
+ * gives the caller one reference to it, {@code retain} adds a reference, and
+ * {@code release} drops one. A cell that loses its last reference is returned to the
+ * pool, and the reference it held to its tail is dropped in turn, so releasing the last
+ * reference to a list reclaims exactly the cells that no other list shares. The counts
+ * are updated atomically, so references can be retained and released from any thread.
+ * Only the allocation and the return of cells to the pool take a lock.
+ *
+ * As with any other data, a list created in one thread must be safely published, for
+ * example through a volatile field or a concurrent collection, before another thread
+ * reads it. The pool is private to the store, so no other code can relink its cells.
+ */
+public class PersistentIntList {
+
+    // Reference counts are kept in chunks of this many cells, as a power of two.
+    private static final int COUNT_CHUNK_SHIFT = 12;
+    private static final int COUNT_CHUNK_MASK = (1 << COUNT_CHUNK_SHIFT) - 1;
+    private static final VarHandle COUNT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // The cells: key and tail of each list cell are the key and successor of a node.
+    private final IntListPool pool;
+    // The reference count of each cell. Chunks are added under the lock of the pool, and
+    // the array is replaced as a whole whenever that happens.
+    private volatile int[][] counts = new int[1][];
+    // Current number of cells in use.
+    private int liveCells = 0;
+
+    /**
+     * Creates a new store.
+     * @param initialCapacity Number of cells expected to be in use at the same time.
+     * @param checked Whether the cells are kept in an IntListPool that verifies every
+     * access, or in an UncheckedIntListPool that does not.
+     */
+    public PersistentIntList(int initialCapacity, boolean checked) {
+        pool = checked ? new IntListPool(initialCapacity) : new UncheckedIntListPool(initialCapacity);
+        // Lists are read from any number of threads without a lock.
+        pool.setShared(true);
+    }
+
+    /**
+     * Returns the number of cells currently in use by all lists of this store.
+     * @return The number of live cells.
+     */
+    public int getLiveCellCount() {
+        synchronized(pool) { return liveCells; }
+    }
+
+    // The chunk of reference counts that covers cell n, created if necessary. Must be
+    // called with the lock of the pool held.
+    private int[] countChunk(int n) {
+        int[][] chunks = counts;
+        int c = n >>> COUNT_CHUNK_SHIFT;
+        if(c >= chunks.length || chunks[c] == null) {
+            chunks = Arrays.copyOf(chunks, Math.max(chunks.length, c + 1));
+            chunks[c] = new int[COUNT_CHUNK_MASK + 1];
+            counts = chunks;
+        }
+        return chunks[c];
+    }
+
+    /**
+     * Returns the list that starts with the given key followed by the given list. The new
+     * list holds its own reference to the tail, so the caller keeps its reference.
+     * @param k The first key of the new list.
+     * @param tail The rest of the new list, 0 for the empty list.
+     * @return The new list.
+     */
+    public int cons(int k, int tail) {
+        int n;
+        synchronized(pool) {
+            n = pool.allocate(k);
+            // The reference to the tail is only taken once the cell exists, so that a
+            // failed allocation leaves the count of the tail as it was.
+            try {
+                retain(tail);
+            }
+            catch(IllegalStateException e) {
+                pool.release(n);
+                throw e;
+            }
+            pool.setNext(n, tail);
+            COUNT.setRelease(countChunk(n), n & COUNT_CHUNK_MASK, 1);
+            liveCells++;
+        }
+        return n;
+    }
+
+    /**
+     * Returns a new list of the given keys.
+     * @param keys The keys of the list, in order.
+     * @return The new list, 0 if there are no keys.
+     */
+    public int of(int... keys) {
+        synchronized(pool) {
+            int n = pool.allocate(keys);
+            for(int m = n; m != 0; m = pool.getNext(m)) {
+                COUNT.setRelease(countChunk(m), m & COUNT_CHUNK_MASK, 1);
+            }
+            liveCells += keys.length;
+            return n;
+        }
+    }
+
+    /**
+     * Adds a reference to the given list.
+     * @param n The list.
+     * @return The list {@code n}, for convenience.
+     * @throws IllegalStateException If the list has already been reclaimed.
+     */
+    public int retain(int n) {
+        if(n == 0) { return 0; }
+        int[] chunk = counts[n >>> COUNT_CHUNK_SHIFT];
+        int i = n & COUNT_CHUNK_MASK;
+        // A count that has reached zero must stay there, or the cell could be revived
+        // after it has been reused, so the increment is only made on a positive count.
+        while(true) {
+            int count = (int)COUNT.getVolatile(chunk, i);
+            if(count <= 0) {
+                throw new IllegalStateException("Cell " + n + " has already been reclaimed.");
+            }
+            if(COUNT.compareAndSet(chunk, i, count, count + 1)) { return n; }
+        }
+    }
+
+    /**
+     * Drops a reference to the given list. The cells that this was the last reference to
+     * are returned to the pool with a single splice.
+     * @param n The list.
+     * @return The number of cells that were reclaimed.
+     * @throws IllegalStateException If the list has already been reclaimed.
+     */
+    public int release(int n) {
+        // The cells that reach zero form a prefix of the list, which is still linked.
+        int last = 0, count = 0;
+        for(int m = n; m != 0; m = pool.getNext(m)) {
+            int previous = (int)COUNT.getAndAdd(counts[m >>> COUNT_CHUNK_SHIFT], m & COUNT_CHUNK_MASK, -1);
+            if(previous <= 0) {
+                throw new IllegalStateException("Cell " + m + " has already been reclaimed.");
+            }
+            if(previous > 1) { break; }
+            last = m;
+            count++;
+        }
+        if(count > 0) {
+            synchronized(pool) {
+                pool.setNext(last, 0);
+                pool.release(n, last, count);
+                liveCells -= count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first key of the given list.
+     * @param n The list, which must not be empty.
+     * @return The first key of the list.
+     */
+    public int head(int n) {
+        return pool.getKey(n);
+    }
+
+    /**
+     * Returns the given list without its first key. The result shares the cells of
+     * {@code n} and holds no reference of its own; retain it to keep it beyond the
+     * lifetime of the references to {@code n}.
+     * @param n The list, which must not be empty.
+     * @return The rest of the list, 0 if it is empty.
+     */
+    public int tail(int n) {
+        return pool.getNext(n);
+    }
+
+    /**
+     * Returns the number of keys in the given list.
+     * @param n The list.
+     * @return The length of the list.
+     */
+    public int size(int n) {
+        int count = 0;
+        for(; n != 0; n = pool.getNext(n)) { count++; }
+        return count;
+    }
+
+    /**
+     * Returns the keys of the given list in a new array.
+     * @param n The list.
+     * @return The keys of the list, in order.
+     */
+    public int[] toArray(int n) {
+        int[] result = new int[size(n)];
+        for(int i = 0; n != 0; n = pool.getNext(n)) { result[i++] = pool.getKey(n); }
+        return result;
+    }
+
+    /**
+     * Return a string representation of the given list.
+     * @param n The list.
+     * @return The keys of the list between square brackets separated by commas and spaces.
+     */
+    public String toString(int n) {
+        return Arrays.toString(toArray(n));
+    }
+}
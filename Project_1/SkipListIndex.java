@@ -0,0 +1,255 @@
+/**
+ * A skip list index over a chain sorted in ascending order of its keys, for searching,
+ * inserting and removing keys in expected O(log n) steps instead of walking the chain.
+ *
+ * The chain itself stays the bottom level of the skip list and remains a plain chain of
+ * its pool that can be traversed with {@code getNext} at any time. About one node in four
+ * gets an entry in the first index level, one in sixteen in the second, and so on. The
+ * index entries are nodes of the same pool. An entry is a pair of nodes: the key of the
+ * first is the node of the chain that the entry stands for, its successor is the second
+ * node, whose key is the next entry on the same level and whose successor is the entry
+ * for the same node on the level below, 0 on the lowest level. All entries of a node of
+ * the chain therefore form one chain of their own from the top level down, which is
+ * released in one call when the node is removed. Each level starts with a sentinel entry
+ * that stands for no node and sorts before every key.
+ *
+ * The index is only correct as long as the chain is changed through it. Among several
+ * nodes with the same key, searches find the first one, and inserted nodes go in front
+ * of the existing nodes with the same key. The index holds on to its nodes in the pool
+ * until {@code dispose} is called.
+ */
+public class SkipListIndex {
+
+    // Number of index levels, enough for about 4^16 nodes.
+    private static final int MAX_LEVEL = 16;
+
+    private final IntListPool pool;
+    // First node and length of the indexed chain.
+    private int head;
+    private int size;
+
+    // The sentinel entry of each level. They form one chain like the entries of a node.
+    private final int[] sentinel = new int[MAX_LEVEL];
+    // Number of index levels currently in use, at least one.
+    private int levels = 1;
+    // The last entry before the search key on each level, filled in by findPredecessor.
+    private final int[] update = new int[MAX_LEVEL];
+    // State of the xorshift generator that chooses the levels of new nodes.
+    private int seed;
+
+    /**
+     * Builds an index over the given sorted chain.
+     * @param pool The pool that holds the chain.
+     * @param head The first node of the chain, 0 for an empty chain.
+     */
+    public SkipListIndex(IntListPool pool, int head) {
+        this(pool, head, 0x2545F491);
+    }
+
+    /**
+     * Builds an index over the given sorted chain in a single walk of the chain.
+     * @param pool The pool that holds the chain.
+     * @param head The first node of the chain, 0 for an empty chain.
+     * @param seed Seed for the random choice of the levels of the nodes.
+     * @throws IllegalArgumentException If the chain is not sorted.
+     */
+    public SkipListIndex(IntListPool pool, int head, int seed) {
+        this.pool = pool;
+        this.head = head;
+        this.seed = seed == 0 ? 1 : seed;
+        int below = 0;
+        for(int l = 0; l < MAX_LEVEL; l++) {
+            sentinel[l] = below = newEntry(0, below);
+        }
+        // update holds the last entry on each level while the index is built.
+        System.arraycopy(sentinel, 0, update, 0, MAX_LEVEL);
+        int prevKey = 0;
+        for(int n = head; n != 0; n = pool.getNext(n)) {
+            int k = pool.getKey(n);
+            if(size > 0 && k < prevKey) {
+                dispose();
+                throw new IllegalArgumentException("The chain is not sorted at node " + n + ".");
+            }
+            prevKey = k;
+            size++;
+            int level = randomLevel();
+            below = 0;
+            for(int l = 0; l < level; l++) {
+                int e = newEntry(n, below);
+                setRight(update[l], e);
+                update[l] = e;
+                below = e;
+            }
+            levels = Math.max(levels, level);
+        }
+    }
+
+    /**
+     * Returns the first node of the indexed chain.
+     * @return The first node of the chain, 0 if the chain is empty.
+     */
+    public int getHead() {
+        return head;
+    }
+
+    /**
+     * Returns the number of nodes in the indexed chain.
+     * @return The length of the chain.
+     */
+    public int size() {
+        return size;
+    }
+
+    // Choose the number of index levels of a new node: l with probability (3/4)(1/4)^l.
+    private int randomLevel() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return Math.min(MAX_LEVEL, Integer.numberOfTrailingZeros(seed) / 2);
+    }
+
+    // Allocate an entry for node n with no right neighbour above the given entry.
+    private int newEntry(int n, int below) {
+        int links = pool.allocate(0);
+        pool.setNext(links, below);
+        int e = pool.allocate(n);
+        pool.setNext(e, links);
+        return e;
+    }
+
+    private int right(int e) {
+        return pool.getKey(pool.getNext(e));
+    }
+
+    private void setRight(int e, int r) {
+        pool.setKey(pool.getNext(e), r);
+    }
+
+    private int down(int e) {
+        return pool.getNext(pool.getNext(e));
+    }
+
+    // Descend through the index to the last node whose key is less than k, filling in
+    // update on the way. Returns that node, 0 if every key is at least k.
+    private int findPredecessor(int k) {
+        int e = sentinel[levels - 1];
+        for(int l = levels - 1; l >= 0; l--) {
+            int r;
+            while((r = right(e)) != 0 && pool.getKey(pool.getKey(r)) < k) { e = r; }
+            update[l] = e;
+            if(l > 0) { e = down(e); }
+        }
+        int p = pool.getKey(e);
+        int m = p == 0 ? head : pool.getNext(p);
+        while(m != 0 && pool.getKey(m) < k) {
+            p = m;
+            m = pool.getNext(m);
+        }
+        return p;
+    }
+
+    /**
+     * Returns the first node whose key is at least {@code k}.
+     * @param k The key to search for.
+     * @return The first node with a key of at least {@code k}, 0 if there is none.
+     */
+    public int ceiling(int k) {
+        int p = findPredecessor(k);
+        return p == 0 ? head : pool.getNext(p);
+    }
+
+    /**
+     * Returns the first node with the given key.
+     * @param k The key to search for.
+     * @return The first node with key {@code k}, 0 if the chain does not contain the key.
+     */
+    public int find(int k) {
+        int n = ceiling(k);
+        return n != 0 && pool.getKey(n) == k ? n : 0;
+    }
+
+    /**
+     * Checks whether the chain contains the given key.
+     * @param k The key to search for.
+     * @return True if some node of the chain has key {@code k}.
+     */
+    public boolean contains(int k) {
+        return find(k) != 0;
+    }
+
+    /**
+     * Allocates a node with the given key and links it into the chain at its sorted position.
+     * @param k The key of the new node.
+     * @return The new node.
+     */
+    public int insert(int k) {
+        int p = findPredecessor(k);
+        int n = pool.allocate(k);
+        if(p == 0) {
+            pool.setNext(n, head);
+            head = n;
+        }
+        else {
+            pool.setNext(n, pool.getNext(p));
+            pool.setNext(p, n);
+        }
+        size++;
+        int level = randomLevel();
+        for(; levels < level; levels++) { update[levels] = sentinel[levels]; }
+        int below = 0;
+        for(int l = 0; l < level; l++) {
+            int e = newEntry(n, below);
+            setRight(e, right(update[l]));
+            setRight(update[l], e);
+            below = e;
+        }
+        return n;
+    }
+
+    /**
+     * Unlinks the first node with the given key from the chain and releases it.
+     * @param k The key to remove.
+     * @return True if a node was removed, false if the chain does not contain the key.
+     */
+    public boolean remove(int k) {
+        int p = findPredecessor(k);
+        int x = p == 0 ? head : pool.getNext(p);
+        if(x == 0 || pool.getKey(x) != k) { return false; }
+        // A node with an entry on some level has entries on all levels below it, and the
+        // entry on its top level starts the chain of all of them.
+        int top = 0;
+        for(int l = 0; l < levels; l++) {
+            int e = update[l], r = right(e);
+            if(r == 0 || pool.getKey(r) != x) { break; }
+            setRight(e, right(r));
+            top = r;
+        }
+        if(top != 0) { pool.release(top); }
+        while(levels > 1 && right(sentinel[levels - 1]) == 0) { levels--; }
+        int m = pool.setNext(x, 0);
+        if(p == 0) { head = m; } else { pool.setNext(p, m); }
+        pool.release(x);
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the nodes of the index to the pool, leaving the chain as it is. The index
+     * must not be used after this call.
+     * @return The number of nodes that were released.
+     */
+    public int dispose() {
+        int count = 0;
+        // From the bottom up, so that the entry below an entry is already gone and its
+        // link can be cut before the entry itself is released.
+        for(int l = 0; l < MAX_LEVEL; l++) {
+            for(int e = sentinel[l]; e != 0; ) {
+                int r = right(e);
+                pool.setNext(pool.getNext(e), 0);
+                count += pool.release(e);
+                e = r;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * A node pool whose node accessors skip all verification and call counting. Reading or
+ * writing a node that is not allocated silently accesses whatever the slot contains, or
+ * throws ArrayIndexOutOfBoundsException if the slot does not exist. With the checks gone,
+ * each accessor compiles down to two array loads, which roughly halves the cost of every
+ * hop of a traversal compared to {@code IntListPool}. Use the checked pool while
+ * debugging and switch to this one in production. Releasing a chain of known tail and
+ * length splices it into the free list in constant time, without walking it. Frozen
+ * chains are the one exception: freezing is requested explicitly, so key assignments and
+ * releases still respect it.
+ */
+public class UncheckedIntListPool extends IntListPool {
+
+    /**
+     * Creates a new unchecked pool for the given number of nodes. The pool will grow
+     * past this size as needed, so the initial capacity is merely a hint for the chunk size.
+     * @param initialCapacity Number of nodes expected to be in use at the same time.
+     */
+    public UncheckedIntListPool(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    @Override
+    protected void verifyIndex(int n) { }
+
+    @Override
+    public int getKey(int n) {
+        return keyDirectory()[n >>> chunkShift][n & chunkMask];
+    }
+
+    @Override
+    public int getNext(int n) {
+        return nextDirectory()[n >>> chunkShift][n & chunkMask];
+    }
+
+    @Override
+    public int setKey(int n, int k) {
+        verifyNotFrozen(n);
+        int[] chunk = keyDirectory()[n >>> chunkShift];
+        int result = chunk[n & chunkMask];
+        chunk[n & chunkMask] = k;
+        return result;
+    }
+
+    @Override
+    public int setNext(int n, int m) {
+        int[] chunk = nextDirectory()[n >>> chunkShift];
+        int result = chunk[n & chunkMask];
+        chunk[n & chunkMask] = m;
+        return result;
+    }
+
+    @Override
+    public int release(int head, int tail, int count) {
+        if(head == 0) { return 0; }
+        verifyReleasable(head);
+        return splice(head, tail, count);
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.Arrays;
+
+/**
+ * Packs the words with the DSatur heuristic for graph coloring. Words are placed one at a
+ * time, always choosing next the word whose conflicting words already occupy the most
+ * different bins, ties going to the word with more conflicts overall, and each word goes
+ * into the first bin that it fits. Putting the most constrained words first makes a single
+ * pass of DSatur usually beat many random first-fit orders.
+ */
+public class DSaturSolver implements PackingSolver {
+
+    @Override
+    public int[] solve(PackingInstance instance) {
+        int n = instance.size();
+        int[] bin = new int[n];
+        Arrays.fill(bin, -1);
+        // For each word, the set of bins that its conflicting words occupy, and its size.
+        long[][] blocked = new long[n][(n + 63) >>> 6];
+        int[] saturation = new int[n];
+        for(int step = 0; step < n; step++) {
+            int v = -1;
+            for(int u = 0; u < n; u++) {
+                if(bin[u] < 0 && (v < 0 || saturation[u] > saturation[v]
+                || saturation[u] == saturation[v] && instance.getDegree(u) > instance.getDegree(v))) { v = u; }
+            }
+            int c = 0;
+            while((blocked[v][c >>> 6] & (1L << c)) != 0) { c++; }
+            bin[v] = c;
+            long[] row = instance.getNeighbours(v);
+            for(int i = 0; i < row.length; i++) {
+                for(long bits = row[i]; bits != 0; bits &= bits - 1) {
+                    int u = (i << 6) + Long.numberOfTrailingZeros(bits);
+                    if(bin[u] < 0 && (blocked[u][c >>> 6] & (1L << c)) == 0) {
+                        blocked[u][c >>> 6] |= 1L << c;
+                        saturation[u]++;
+                    }
+                }
+            }
+        }
+        return bin;
+    }
+
+    @Override
+    public String toString() {
+        return "dsatur";
+    }
+}
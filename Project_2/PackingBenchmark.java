@@ -0,0 +1,48 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Compares the packing solvers on the instances that WordPackingTest generates for the
+ * given seeds, reporting the total number of bins and the total time of each solver, and
+ * how many of its packings are provably optimal. The total of the lower bounds is printed
+ * first, as the best that any solver could possibly reach.
+ */
+public class PackingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int seed = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Duration budget = Duration.ofMillis(args.length > 3 ? Long.parseLong(args[3]) : 1000);
+        List<String> allWords = Files.readAllLines(new File("sgb-words.txt").toPath());
+        PackingSolver[] solvers = {
+            new ShuffleGreedySolver(), new DSaturSolver(),
+            new TabuSolver(new DSaturSolver(), budget, 100000, seed)
+        };
+        int bounds = 0;
+        for(int s = seed; s < seed + rounds; s++) {
+            bounds += new PackingInstance(WordPackingTest.testWords(allWords, s, n)).getBounds().getLowerBound();
+        }
+        System.out.printf("%-20s %6d bins%n", "lower bound", bounds);
+        for(PackingSolver solver: solvers) {
+            int bins = 0, optimal = 0;
+            long time = 0;
+            for(int s = seed; s < seed + rounds; s++) {
+                PackingInstance instance = new PackingInstance(WordPackingTest.testWords(allWords, s, n));
+                long startTime = System.nanoTime();
+                int[] result = solver.solve(instance);
+                time += System.nanoTime() - startTime;
+                if(!instance.isValid(result) || PackingInstance.renumber(result.clone()) != PackingInstance.binCount(result)) {
+                    System.out.println(solver + " returned an invalid packing for seed " + s);
+                    return;
+                }
+                bins += PackingInstance.binCount(result);
+                if(instance.getBounds().isOptimal(result)) { optimal++; }
+            }
+            System.out.printf("%-20s %6d bins %10.1f ms %3d/%d optimal%n", solver, bins, time / 1e6, optimal, rounds);
+        }
+    }
+}
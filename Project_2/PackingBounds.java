@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * Lower bounds on the number of bins that any packing of an instance needs. Words that
+ * pairwise conflict must all go into different bins, so the size of any clique of the
+ * conflict graph is a lower bound, and a packing that uses that many bins is optimal.
+ *
+ * Each instance has one object of this class, see {@code PackingInstance.getBounds}.
+ * The position-letter bound takes a single pass over the words and is computed at once.
+ * The clique bound needs the conflict graph and a search on it, so it is only computed
+ * the first time it is asked for, with the work capped, and then kept.
+ */
+public class PackingBounds {
+
+    // Number of highest-degree words from which a greedy clique search starts.
+    private static final int CLIQUE_STARTS = 32;
+    // Limit on the work of the clique search, counted in 64-bit words read, building the
+    // conflict graph included: about 10 ms once compiled. The graph of more than about
+    // 830 words alone exceeds it, so unless a solver has built the graph already, large
+    // instances keep the position-letter bound.
+    private static final long CLIQUE_WORK = 1L << 20;
+
+    private final PackingInstance instance;
+    private final int positionLetter;
+    // The best bound known, 0 until the clique bound has been computed.
+    private int lowerBound;
+
+    PackingBounds(PackingInstance instance) {
+        this.instance = instance;
+        this.positionLetter = positionLetterBound(instance);
+    }
+
+    /**
+     * Returns the position-letter bound of the instance, which costs nothing to ask for.
+     * @return The size of the largest position-letter group.
+     */
+    public int getPositionLetterBound() {
+        return positionLetter;
+    }
+
+    /**
+     * Returns the best lower bound that this class computes for the instance, searching
+     * for a clique on the first call.
+     * @return A number of bins that every packing of the instance needs at least.
+     */
+    public synchronized int getLowerBound() {
+        if(lowerBound == 0) {
+            lowerBound = Math.max(positionLetter, greedyCliqueBound(instance, CLIQUE_STARTS, CLIQUE_WORK));
+        }
+        return lowerBound;
+    }
+
+    /**
+     * Checks whether the given packing uses no more bins than a lower bound, which proves
+     * that no packing uses fewer bins. The clique bound is only computed if the packing
+     * does not already reach the position-letter bound.
+     * @param bins The bin of each word.
+     * @return True if the packing is provably optimal.
+     */
+    public boolean isOptimal(int[] bins) {
+        int count = PackingInstance.binCount(bins);
+        return count <= positionLetter || count <= getLowerBound();
+    }
+
+    /**
+     * Returns the largest number of words that have the same letter in the same position.
+     * These words form a clique of the conflict graph.
+     * @param instance The words to pack.
+     * @return The size of the largest position-letter group, 0 if there are no words.
+     */
+    public static int positionLetterBound(PackingInstance instance) {
+        long[] masks = instance.getMasks();
+        int[] count = new int[64 * PackingInstance.MASK_LONGS];
+        int best = 0;
+        for(int i = 0; i < masks.length; i++) {
+            int offset = 64 * (i % PackingInstance.MASK_LONGS);
+            for(long bits = masks[i]; bits != 0; bits &= bits - 1) {
+                best = Math.max(best, ++count[offset + Long.numberOfTrailingZeros(bits)]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Searches greedily for a large clique of the conflict graph. From each of the given
+     * number of words with the most conflicts, the clique is grown one word at a time,
+     * always adding the candidate that conflicts with the most other candidates, where the
+     * candidates are the words that conflict with every word of the clique so far. Once
+     * the work limit is reached, the search stops with the largest clique so far, and if
+     * building the conflict graph alone would exceed the limit, it is not even begun.
+     * @param instance The words to pack.
+     * @param starts Number of words to start a clique from.
+     * @param maxWork Limit on the number of 64-bit words read, counting three for each
+     * pair of words compared if the conflict graph has to be built.
+     * @return The size of the largest clique found, 0 if there are no words.
+     */
+    public static int greedyCliqueBound(PackingInstance instance, int starts, long maxWork) {
+        int n = instance.size();
+        if(n == 0) { return 0; }
+        long work = instance.hasGraph() ? 0 : PackingInstance.MASK_LONGS * ((long)n * (n - 1) / 2);
+        if(work > maxWork) { return 1; }
+        long[][] rows = new long[n][];
+        Integer[] order = new Integer[n];
+        for(int v = 0; v < n; v++) {
+            rows[v] = instance.getNeighbours(v);
+            order[v] = v;
+        }
+        Arrays.sort(order, (u, v) -> instance.getDegree(v) - instance.getDegree(u));
+        int best = 1;
+        long[] candidates = new long[rows[0].length];
+        for(int s = 0; s < Math.min(starts, n) && work < maxWork; s++) {
+            System.arraycopy(rows[order[s]], 0, candidates, 0, candidates.length);
+            int size = 1;
+            while(work < maxWork) {
+                int next = -1, nextDegree = -1;
+                for(int i = 0; i < candidates.length; i++) {
+                    for(long bits = candidates[i]; bits != 0; bits &= bits - 1) {
+                        int u = (i << 6) + Long.numberOfTrailingZeros(bits);
+                        long[] row = rows[u];
+                        int degree = 0;
+                        for(int j = 0; j < row.length; j++) { degree += Long.bitCount(row[j] & candidates[j]); }
+                        work += row.length;
+                        if(degree > nextDegree) {
+                            next = u;
+                            nextDegree = degree;
+                        }
+                    }
+                }
+                if(next < 0) { break; }
+                size++;
+                long[] row = rows[next];
+                for(int j = 0; j < row.length; j++) { candidates[j] &= row[j]; }
+            }
+            best = Math.max(best, size);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,197 @@
+import java.util.*;
+
+/**
+ * A word packing problem prepared for the solvers. Packing words into bins so that no
+ * two words in the same bin have the same letter in the same position is coloring the
+ * conflict graph whose vertices are the words and whose edges join every two words that
+ * have some letter in the same position, the bins being the colors.
+ *
+ * Each word is encoded as a mask of 5 x 26 bits, one bit for each combination of position
+ * and letter, so two words conflict exactly when their masks have common bits, and the
+ * union of the masks of the words in a bin tells in three ANDs whether another word fits.
+ * The conflict graph is also kept as one bitset row of neighbours per word, built the
+ * first time a solver asks for it, and so are the lower bounds on the number of bins.
+ */
+public class PackingInstance {
+
+    /** Number of longs in the mask of one word. */
+    static final int MASK_LONGS = 3;
+
+    private final List<String> words;
+    private final int n;
+    // The masks of the words, MASK_LONGS consecutive longs per word.
+    private final long[] masks;
+    // Bit u of row v is set when words u and v conflict, null until first needed.
+    private long[][] adjacency;
+    private int[] degree;
+    // The lower bounds, null until first needed.
+    private PackingBounds bounds;
+
+    /**
+     * Creates the instance for the given words.
+     * @param words The words to pack, all of length at most five and in lower case.
+     */
+    public PackingInstance(List<String> words) {
+        this.words = Collections.unmodifiableList(new ArrayList<String>(words));
+        n = words.size();
+        masks = new long[MASK_LONGS * n];
+        for(int i = 0; i < n; i++) { encode(words.get(i), masks, MASK_LONGS * i); }
+    }
+
+    // Build the conflict graph if that has not been done yet.
+    private synchronized void buildGraph() {
+        if(adjacency != null) { return; }
+        long[][] rows = new long[n][(n + 63) >>> 6];
+        int[] degrees = new int[n];
+        for(int v = 0; v < n; v++) {
+            for(int u = v + 1; u < n; u++) {
+                if(conflict(u, v)) {
+                    rows[v][u >>> 6] |= 1L << u;
+                    rows[u][v >>> 6] |= 1L << v;
+                    degrees[u]++;
+                    degrees[v]++;
+                }
+            }
+        }
+        degree = degrees;
+        adjacency = rows;
+    }
+
+    // Whether the conflict graph has been built.
+    synchronized boolean hasGraph() {
+        return adjacency != null;
+    }
+
+    // Store the mask of word w at position at of the array of masks.
+    static void encode(String w, long[] masks, int at) {
+        for(int i = 0; i < w.length(); i++) {
+            int bit = 26 * i + (w.charAt(i) - 'a');
+            masks[at + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns the words of this instance.
+     * @return The words, in their original order.
+     */
+    public List<String> getWords() {
+        return words;
+    }
+
+    /**
+     * Returns the number of words.
+     * @return The number of words.
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Returns the masks of the words. The array must not be modified.
+     * @return The masks, {@code MASK_LONGS} consecutive longs per word.
+     */
+    long[] getMasks() {
+        return masks;
+    }
+
+    /**
+     * Returns the neighbours of word {@code v} in the conflict graph. The array must not
+     * be modified.
+     * @param v The index of the word.
+     * @return A bitset whose bit u is set when words u and v cannot share a bin.
+     */
+    long[] getNeighbours(int v) {
+        buildGraph();
+        return adjacency[v];
+    }
+
+    /**
+     * Returns the number of words that conflict with word {@code v}.
+     * @param v The index of the word.
+     * @return The degree of the word in the conflict graph.
+     */
+    public int getDegree(int v) {
+        buildGraph();
+        return degree[v];
+    }
+
+    /**
+     * Returns the lower bounds on the number of bins of this instance, which are shared by
+     * all solvers and computed only once.
+     * @return The bounds of this instance.
+     */
+    public synchronized PackingBounds getBounds() {
+        if(bounds == null) { bounds = new PackingBounds(this); }
+        return bounds;
+    }
+
+    /**
+     * Checks whether two words cannot be placed into the same bin.
+     * @param u The index of one word.
+     * @param v The index of the other word.
+     * @return True if the words have the same letter in some position.
+     */
+    public boolean conflict(int u, int v) {
+        int a = MASK_LONGS * u, b = MASK_LONGS * v;
+        return (masks[a] & masks[b]) != 0 || (masks[a + 1] & masks[b + 1]) != 0
+            || (masks[a + 2] & masks[b + 2]) != 0;
+    }
+
+    /**
+     * Returns the number of bins used by the given assignment of words to bins.
+     * @param bins The bin of each word, numbered from 0.
+     * @return One more than the highest bin number.
+     */
+    public static int binCount(int[] bins) {
+        int count = 0;
+        for(int b: bins) { count = Math.max(count, b + 1); }
+        return count;
+    }
+
+    /**
+     * Renumbers the bins of the given assignment in the order of their first word, so that
+     * the bins that are in use are numbered from 0 with no number left unused.
+     * @param bins The bin of each word, numbered from 0, renumbered in place.
+     * @return The number of bins in use.
+     */
+    public static int renumber(int[] bins) {
+        int[] number = new int[binCount(bins)];
+        Arrays.fill(number, -1);
+        int count = 0;
+        for(int v = 0; v < bins.length; v++) {
+            if(number[bins[v]] < 0) { number[bins[v]] = count++; }
+            bins[v] = number[bins[v]];
+        }
+        return count;
+    }
+
+    /**
+     * Checks that the given assignment puts no two conflicting words into the same bin.
+     * @param bins The bin of each word.
+     * @return True if the assignment is a valid packing.
+     */
+    public boolean isValid(int[] bins) {
+        if(bins.length != n) { return false; }
+        long[] union = new long[MASK_LONGS * binCount(bins)];
+        for(int v = 0; v < n; v++) {
+            int b = MASK_LONGS * bins[v], m = MASK_LONGS * v;
+            for(int i = 0; i < MASK_LONGS; i++) {
+                if((union[b + i] & masks[m + i]) != 0) { return false; }
+                union[b + i] |= masks[m + i];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts an assignment of words to bins into lists of words.
+     * @param bins The bin of each word, numbered from 0.
+     * @return The bins, each a list of words in their order in the input.
+     */
+    public List<List<String>> toBins(int[] bins) {
+        List<List<String>> result = new ArrayList<List<String>>();
+        for(int i = 0; i < binCount(bins); i++) { result.add(new ArrayList<String>()); }
+        for(int w = 0; w < n; w++) { result.get(bins[w]).add(words.get(w)); }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.List;
+
+/**
+ * The packing found by a search together with the lower bound that the search used, which
+ * tells whether the packing is provably optimal without computing any bound again.
+ */
+public class PackingResult {
+
+    private final List<List<String>> bins;
+    private final int lowerBound;
+
+    PackingResult(List<List<String>> bins, int lowerBound) {
+        this.bins = bins;
+        this.lowerBound = lowerBound;
+    }
+
+    /**
+     * Returns the packing.
+     * @return The bins, each a list of words in their order in the input.
+     */
+    public List<List<String>> getBins() {
+        return bins;
+    }
+
+    /**
+     * Returns the number of bins of the packing.
+     * @return The number of bins.
+     */
+    public int getBinCount() {
+        return bins.size();
+    }
+
+    /**
+     * Returns the best lower bound on the number of bins that the search knew of.
+     * @return A number of bins that every packing of the words needs at least.
+     */
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Checks whether the packing reaches the lower bound, which proves that no packing of
+     * the words uses fewer bins.
+     * @return True if the packing is provably optimal.
+     */
+    public boolean isOptimal() {
+        return bins.size() <= lowerBound;
+    }
+
+    @Override
+    public String toString() {
+        return bins.size() + " bins, lower bound " + lowerBound + (isOptimal() ? ", optimal" : "");
+    }
+}
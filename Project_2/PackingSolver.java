@@ -0,0 +1,13 @@
+/**
+ * A strategy for packing the words of an instance into as few bins as it can.
+ */
+public interface PackingSolver {
+
+    /**
+     * Assigns every word of the instance to a bin so that no two conflicting words share
+     * a bin.
+     * @param instance The words to pack.
+     * @return The bin of each word, numbered from 0 with no bin number left unused.
+     */
+    int[] solve(PackingInstance instance);
+}
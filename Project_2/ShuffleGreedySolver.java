@@ -0,0 +1,38 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The multi-start first-fit search of {@code WordPacking.wordPack}: the words are packed
+ * greedily from many random orders in parallel, and the packing with the fewest bins wins.
+ */
+public class ShuffleGreedySolver implements PackingSolver {
+
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates the solver that runs on the common fork-join pool with seed 0.
+     */
+    public ShuffleGreedySolver() {
+        this(0, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates the solver.
+     * @param seed The seed of the random orders.
+     * @param pool The fork-join pool whose threads run the restarts.
+     */
+    public ShuffleGreedySolver(long seed, ForkJoinPool pool) {
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    @Override
+    public int[] solve(PackingInstance instance) {
+        return WordPacking.shuffleGreedy(instance, seed, pool);
+    }
+
+    @Override
+    public String toString() {
+        return "shuffle-greedy";
+    }
+}
@@ -0,0 +1,156 @@
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Improves the packing of another solver by tabu search. Starting from that packing with
+ * k bins, the words of the smallest bin are spread over the other bins, each into the bin
+ * where it conflicts with the fewest words, and the resulting conflicts are repaired by
+ * the TabuCol local search: every step moves one word in conflict to the bin that lowers
+ * the number of conflicts the most, and forbids moving it back for a while so that the
+ * search does not cycle. Once no conflicts remain, the same is tried with one bin fewer,
+ * until a level fails within its step limit, the time budget runs out, or the packing
+ * reaches the lower bound of {@code PackingBounds} and so is provably optimal.
+ *
+ * The search keeps, for every word and bin, the number of conflicting words in that bin,
+ * so evaluating a move takes constant time, and making a move updates the counts of the
+ * conflicting words of the moved word by walking its bitset row of the conflict graph.
+ */
+public class TabuSolver implements PackingSolver {
+
+    private final PackingSolver initial;
+    private final Duration budget;
+    private final int maxSteps;
+    private final long seed;
+
+    /**
+     * Creates the solver.
+     * @param initial The solver whose packing is improved.
+     * @param budget The time to spend on improving, on top of the initial solver.
+     * @param maxSteps Number of moves to try at each bin count before giving up.
+     * @param seed The seed for breaking ties between equally good moves.
+     */
+    public TabuSolver(PackingSolver initial, Duration budget, int maxSteps, long seed) {
+        this.initial = initial;
+        this.budget = budget;
+        this.maxSteps = maxSteps;
+        this.seed = seed;
+    }
+
+    @Override
+    public int[] solve(PackingInstance instance) {
+        long startTime = System.nanoTime(), nanos = budget.toNanos();
+        Random rng = new Random(seed);
+        int[] best = initial.solve(instance);
+        int k = PackingInstance.binCount(best), bound = instance.getBounds().getLowerBound();
+        while(k > bound && System.nanoTime() - startTime < nanos) {
+            int[] attempt = dropBin(instance, best, k);
+            if(!repair(instance, attempt, k - 1, rng, startTime, nanos)) { break; }
+            // The repair may have emptied some bin other than the dropped one.
+            best = attempt;
+            k = PackingInstance.renumber(best);
+        }
+        return best;
+    }
+
+    // Returns a copy of the packing with its smallest bin emptied into the other k - 1 bins,
+    // which may leave conflicts.
+    private static int[] dropBin(PackingInstance instance, int[] bins, int k) {
+        int n = bins.length;
+        int[] sizes = new int[k];
+        for(int b: bins) { sizes[b]++; }
+        int smallest = 0;
+        for(int b = 1; b < k; b++) {
+            if(sizes[b] < sizes[smallest]) { smallest = b; }
+        }
+        // Renumber so that the emptied bin is the last one.
+        int[] result = new int[n];
+        for(int v = 0; v < n; v++) {
+            result[v] = bins[v] == smallest ? k - 1 : bins[v] == k - 1 ? smallest : bins[v];
+        }
+        int[] count = new int[k];
+        for(int v = 0; v < n; v++) {
+            if(result[v] != k - 1) { continue; }
+            Arrays.fill(count, 0);
+            long[] row = instance.getNeighbours(v);
+            for(int i = 0; i < row.length; i++) {
+                for(long bits = row[i]; bits != 0; bits &= bits - 1) {
+                    count[result[(i << 6) + Long.numberOfTrailingZeros(bits)]]++;
+                }
+            }
+            int target = 0;
+            for(int b = 1; b < k - 1; b++) {
+                if(count[b] < count[target]) { target = b; }
+            }
+            result[v] = target;
+        }
+        return result;
+    }
+
+    // Run TabuCol on the packing into k bins until it has no conflicts, the step limit is
+    // reached or the time runs out. Returns true if the conflicts were all removed.
+    private boolean repair(PackingInstance instance, int[] bins, int k, Random rng, long startTime, long nanos) {
+        int n = bins.length;
+        // gamma[v * k + b] is the number of words in bin b that conflict with word v.
+        int[] gamma = new int[n * k];
+        int conflicts = 0;
+        for(int v = 0; v < n; v++) {
+            long[] row = instance.getNeighbours(v);
+            for(int i = 0; i < row.length; i++) {
+                for(long bits = row[i]; bits != 0; bits &= bits - 1) {
+                    gamma[v * k + bins[(i << 6) + Long.numberOfTrailingZeros(bits)]]++;
+                }
+            }
+            conflicts += gamma[v * k + bins[v]];
+        }
+        conflicts /= 2;
+        // tabu[v * k + b] is the first step at which word v may move back into bin b.
+        int[] tabu = new int[n * k];
+        int bestConflicts = conflicts;
+        for(int step = 0; conflicts > 0; step++) {
+            if(step == maxSteps || (step & 255) == 0 && System.nanoTime() - startTime >= nanos) { return false; }
+            int bestDelta = Integer.MAX_VALUE, bestWord = -1, bestBin = -1, ties = 0, inConflict = 0;
+            for(int v = 0; v < n; v++) {
+                int current = gamma[v * k + bins[v]];
+                if(current == 0) { continue; }
+                inConflict++;
+                for(int b = 0; b < k; b++) {
+                    if(b == bins[v]) { continue; }
+                    int delta = gamma[v * k + b] - current;
+                    // A forbidden move is still allowed if it leads to the best state yet.
+                    if(tabu[v * k + b] > step && conflicts + delta >= bestConflicts) { continue; }
+                    if(delta < bestDelta) {
+                        bestDelta = delta;
+                        bestWord = v;
+                        bestBin = b;
+                        ties = 1;
+                    }
+                    else if(delta == bestDelta && rng.nextInt(++ties) == 0) {
+                        bestWord = v;
+                        bestBin = b;
+                    }
+                }
+            }
+            if(bestWord < 0) { continue; }
+            int old = bins[bestWord];
+            bins[bestWord] = bestBin;
+            conflicts += bestDelta;
+            long[] row = instance.getNeighbours(bestWord);
+            for(int i = 0; i < row.length; i++) {
+                for(long bits = row[i]; bits != 0; bits &= bits - 1) {
+                    int u = (i << 6) + Long.numberOfTrailingZeros(bits);
+                    gamma[u * k + old]--;
+                    gamma[u * k + bestBin]++;
+                }
+            }
+            tabu[bestWord * k + old] = step + (int)(0.6 * inConflict) + rng.nextInt(10) + 1;
+            bestConflicts = Math.min(bestConflicts, conflicts);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return initial + "+tabu";
+    }
+}
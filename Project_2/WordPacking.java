@@ -1,76 +1,273 @@
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class WordPacking {
     public static String getAuthorName() { return "You, Allen"; }
     public static String getRyersonID() { return "500833038"; }
-    private static int maxBin = 0;
-    private static void count(List<String> words, int r) {
-		List<List<String>> temp = new ArrayList<List<String>>();
-		for(int i = 0; i < 26; i++) {
-			temp.add(new ArrayList<String>());
-		}
-		for(int i = 0; i <= words.size()-1; i++) {//everyword
-				char x = words.get(i).charAt(r);
-				int num = ((int)x)-97;
-				temp.get(num).add(words.get(i));
-				if(temp.get(num).size() >= maxBin) {
-					maxBin = temp.get(num).size();
-				}
-		}
-	}
-    // Test whether two words cannot be placed into same bin.
-    private static boolean incompatible(String w1, String w2) {
-        for(int i = 0; i < w1.length(); i++) {
-            if(w1.charAt(i) == w2.charAt(i)) { return true; }
+    // Number of longs in the mask of one word, see PackingInstance.
+    private static final int MASK_LONGS = PackingInstance.MASK_LONGS;
+
+    // Number of restarts of the greedy packing, the first of which uses the given order.
+    private static final int RESTARTS = 10001;
+    // Restarts are handed to the worker threads in blocks of at most this many.
+    private static final int BLOCK = 64;
+
+    // The state of one multi-start search, shared by the worker threads.
+    private static class Search {
+        final PackingInstance instance;
+        final int n;
+        final long[] masks;
+        final long seed;
+        // Stop as soon as a packing with at most this many bins is found. This is always a
+        // lower bound, so a packing that reaches it is optimal: at first the position-letter
+        // bound, raised to the clique bound if the first restart does not reach it. Guarded
+        // by the lock of the search.
+        int target;
+        // Restarts above this index are skipped. Lowered to the index of every restart
+        // that reaches the target, so that all restarts below the first one that does are
+        // always run, whichever thread gets to them first.
+        final AtomicInteger stop;
+        // Restarts after the first are not begun once this many nanoseconds have passed
+        // since the start time.
+        final long startTime, budget;
+        // Receives every packing that uses fewer bins than all packings before it, or null.
+        final Consumer<List<List<String>>> improvements;
+        // The best packing so far: the bin of each word, its number of bins and the
+        // index of the restart that found it.
+        int[] best;
+        int bestCount, bestRestart;
+
+        Search(PackingInstance instance, long seed, int restarts, long budget,
+        Consumer<List<List<String>>> improvements) {
+            this.instance = instance;
+            this.n = instance.size();
+            this.masks = instance.getMasks();
+            this.seed = seed;
+            this.target = instance.getBounds().getPositionLetterBound();
+            this.stop = new AtomicInteger(restarts);
+            this.startTime = System.nanoTime();
+            this.budget = budget;
+            this.improvements = improvements;
+        }
+
+        boolean expired() {
+            return System.nanoTime() - startTime >= budget;
+        }
+
+        // The bins of the best packing, listing the words of each bin in input order.
+        List<List<String>> result() {
+            return instance.toBins(best);
+        }
+
+        // The best packing together with the bound it was searched against.
+        synchronized PackingResult packingResult() {
+            return new PackingResult(result(), target);
+        }
+
+        // Raise the target to the full lower bound, computing the clique bound while the
+        // other threads go on with their restarts.
+        void raiseTarget() {
+            int bound = instance.getBounds().getLowerBound();
+            synchronized(this) {
+                target = bound;
+                // The restarts that finished in the meantime were checked against the old
+                // target. Any that reached the new one is optimal, so the best one did too,
+                // and it has the lowest index among them.
+                if(bestCount <= target) { stop.accumulateAndGet(bestRestart, Math::min); }
+            }
+        }
+
+        // Run the given restarts, using the given arrays of n elements and of the masks of
+        // up to n bins as scratch space.
+        void run(int from, int to, int[] order, int[] binOf, long[] bins) {
+            for(int r = from; r < to && r <= stop.get(); r++) {
+                if(r > 0 && expired()) { return; }
+                for(int i = 0; i < n; i++) { order[i] = i; }
+                // Every restart but the first shuffles the words with its own generator.
+                if(r > 0) {
+                    Random rng = new Random(seed + r * 0x9E3779B97F4A7C15L);
+                    for(int j = n - 1; j > 0; j--) {
+                        int k = rng.nextInt(j + 1);
+                        int tmp = order[j]; order[j] = order[k]; order[k] = tmp;
+                    }
+                }
+                int binCount = pack(order, binOf, bins);
+                boolean reached;
+                synchronized(this) {
+                    if(best == null || binCount < bestCount || binCount == bestCount && r < bestRestart) {
+                        boolean improved = best == null || binCount < bestCount;
+                        best = binOf.clone();
+                        bestCount = binCount;
+                        bestRestart = r;
+                        if(improved && improvements != null) { improvements.accept(result()); }
+                    }
+                    reached = binCount <= target;
+                }
+                if(reached) { stop.accumulateAndGet(r, Math::min); }
+                // The cheap bound may simply be too weak, so look for a better one.
+                else if(r == 0) { raiseTarget(); }
+            }
+        }
+
+        // Place the words greedily in the given order, each into the first bin that it can
+        // go in. Returns the number of bins used.
+        int pack(int[] order, int[] binOf, long[] bins) {
+            Arrays.fill(bins, 0L);
+            int binCount = 0;
+            for(int w: order) {
+                int m = MASK_LONGS * w;
+                int idx = 0;
+                while(idx < binCount) {
+                    int b = MASK_LONGS * idx;
+                    if((bins[b] & masks[m]) == 0 && (bins[b + 1] & masks[m + 1]) == 0
+                    && (bins[b + 2] & masks[m + 2]) == 0) { break; }
+                    idx++;
+                }
+                if(idx == binCount) { binCount++; }
+                int b = MASK_LONGS * idx;
+                bins[b] |= masks[m];
+                bins[b + 1] |= masks[m + 1];
+                bins[b + 2] |= masks[m + 2];
+                binOf[w] = idx;
+            }
+            return binCount;
         }
-        return false;
     }
-    
+
+    // Runs a range of restarts, splitting it in halves down to single blocks.
+    private static class RestartTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient Search search;
+        private final int from, to;
+
+        RestartTask(Search search, int from, int to) {
+            this.search = search;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(from > search.stop.get() || from > 0 && search.expired()) { return; }
+            if(to - from > BLOCK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RestartTask(search, from, mid), new RestartTask(search, mid, to));
+            }
+            else {
+                int n = search.n;
+                search.run(from, to, new int[n], new int[n], new long[MASK_LONGS * n]);
+            }
+        }
+    }
+
     public static List<List<String>> wordPack(List<String> words) {
-        // The list of bins that we build up.
-    	Map<Integer,List<List<String>>> RNG = new HashMap<Integer,List<List<String>>>();
-    	for(int i = 0 ; i < 5; i++) {
-    		count(words,i);
-    	}
-    	for (int i =0; i <= 10000 ;i++) {
-        	
-    		List<List<String>> result = new ArrayList<List<String>>();
-             outer:
-        // Each word is placed greedily into the first bins that it can go in.
-
-            	 for(String word: words) {
-	        	int idx = 0;
-	             // Index of the bin that we are currently examining. 
-	        	
-	            while(true) {
-	                boolean isGood = true;
-	                // Create a new empty bin into this position if needed.
-	                if(idx == result.size()) { result.add(new ArrayList<String>()); }
-	                // Otherwise, check if the word could go into the current bin.
-	                else {
-	                    for(String w: result.get(idx)) {
-	                        if(incompatible(word, w)) { isGood = false; break; }                    
-	                    }
-	                }
-	                // If the word fits into the current bin, put it there.
-	                if(isGood) { result.get(idx).add(word); continue outer; }
-	                // Otherwise, try the next bin.
-	                else { idx++; }
-	                
-	            }   
-	            
-	        }
-    		if(result.size() == maxBin+1 || result.size() == maxBin) {
-    			return result;
-    		}
-    		
-    		RNG.put(result.size(),result);  
-    		Collections.shuffle(words);
-    	}
-    	int i =0;
-    	for (int j :RNG.keySet()) {
-    		if (j < i || i == 0) i = j;
-    	}
-        return RNG.get(i);
+        return wordPack(words, 0, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Packs the words into as few bins as the search finds, by running the greedy packing
+     * from many random orders of the words in parallel. Restart 0 uses the given order of
+     * the words, and every other restart shuffles the words with a generator seeded from
+     * the seed and its index. The search ends at the first restart, by index, that reaches
+     * the lower bound, and returns the best packing of the restarts up to that one, the
+     * lowest index winning ties, so the result depends only on the words and the seed,
+     * never on the number of threads or their timing.
+     * @param words The words to pack. The list is not modified.
+     * @param seed The seed of the random orders.
+     * @param pool The fork-join pool whose threads run the restarts.
+     * @return The bins, each a list of words in their order in the input.
+     */
+    public static List<List<String>> wordPack(List<String> words, long seed, ForkJoinPool pool) {
+        return pack(words, seed, pool).getBins();
+    }
+
+    /**
+     * Packs the words like {@code wordPack(words, seed, pool)}, and also returns the lower
+     * bound that the search stopped at or failed to reach. The search first aims for the
+     * position-letter bound, which takes one pass over the words. Only if the first restart
+     * misses it is the conflict graph built and searched for a clique, with the work capped,
+     * while the other restarts go on.
+     * @param words The words to pack. The list is not modified.
+     * @param seed The seed of the random orders.
+     * @param pool The fork-join pool whose threads run the restarts.
+     * @return The packing and the lower bound, which tells whether it is provably optimal.
+     */
+    public static PackingResult pack(List<String> words, long seed, ForkJoinPool pool) {
+        return search(new PackingInstance(words), seed, pool, RESTARTS, Long.MAX_VALUE, null).packingResult();
+    }
+
+    /**
+     * Packs the words like {@code wordPack(words)}, but keeps restarting until the time
+     * budget runs out or the lower bound is reached, and returns the best packing found
+     * by then. The first restart always runs to completion, however small the budget, and
+     * restarts that have begun finish, so the call can overrun the budget by the time of
+     * about one greedy pass per worker thread, plus the capped clique search if the first
+     * restart misses the position-letter bound.
+     * @param words The words to pack. The list is not modified.
+     * @param budget The time to search for.
+     * @return The bins, each a list of words in their order in the input.
+     */
+    public static List<List<String>> wordPack(List<String> words, Duration budget) {
+        return wordPack(words, budget, null);
+    }
+
+    /**
+     * Packs the words like {@code wordPack(words, budget)}, and reports each packing that
+     * uses fewer bins than every packing found before it as soon as it is found. The calls
+     * come from the worker threads, one at a time and in order of decreasing bin count,
+     * and the search waits for each call to return, so the consumer should be quick.
+     * @param words The words to pack. The list is not modified.
+     * @param budget The time to search for.
+     * @param improvements Receives the improving packings, or null.
+     * @return The bins, each a list of words in their order in the input.
+     */
+    public static List<List<String>> wordPack(List<String> words, Duration budget,
+    Consumer<List<List<String>>> improvements) {
+        return pack(words, budget, improvements).getBins();
+    }
+
+    /**
+     * Packs the words like {@code wordPack(words, budget, improvements)}, and also returns
+     * the lower bound that the search stopped at or failed to reach.
+     * @param words The words to pack. The list is not modified.
+     * @param budget The time to search for.
+     * @param improvements Receives the improving packings, or null.
+     * @return The packing and the lower bound, which tells whether it is provably optimal.
+     */
+    public static PackingResult pack(List<String> words, Duration budget,
+    Consumer<List<List<String>>> improvements) {
+        long nanos = budget.isNegative() ? 0 : budget.compareTo(MAX_BUDGET) > 0 ? Long.MAX_VALUE : budget.toNanos();
+        return search(new PackingInstance(words), 0, ForkJoinPool.commonPool(), Integer.MAX_VALUE, nanos,
+            improvements).packingResult();
+    }
+
+    // Budgets longer than this are treated as unlimited.
+    private static final Duration MAX_BUDGET = Duration.ofDays(365);
+
+    /**
+     * Packs the words with the given solver.
+     * @param words The words to pack. The list is not modified.
+     * @param solver The solver that assigns the words to bins.
+     * @return The bins, each a list of words in their order in the input.
+     */
+    public static List<List<String>> wordPack(List<String> words, PackingSolver solver) {
+        PackingInstance instance = new PackingInstance(words);
+        return instance.toBins(solver.solve(instance));
+    }
+
+    // Run the multi-start greedy search for the given instance, returning the bin of each word.
+    static int[] shuffleGreedy(PackingInstance instance, long seed, ForkJoinPool pool) {
+        return search(instance, seed, pool, RESTARTS, Long.MAX_VALUE, null).best;
+    }
+
+    private static Search search(PackingInstance instance, long seed, ForkJoinPool pool, int restarts,
+    long budget, Consumer<List<List<String>>> improvements) {
+        Search search = new Search(instance, seed, restarts, budget, improvements);
+        pool.invoke(new RestartTask(search, 0, restarts));
+        return search;
     }
-}
\ No newline at end of file
+}
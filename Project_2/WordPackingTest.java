@@ -26,8 +26,8 @@ public class WordPackingTest {
     
     private static int totalTime = 0;
     
-    public static int test(int seed, int n, boolean verbose) {
-        if(readAllWords("sgb-words.txt", verbose)) { return 9999; }
+    // The words of the test for the given seed, also used by PackingBenchmark.
+    static List<String> testWords(List<String> allWords, int seed, int n) {
         HashSet<String> wordsH = new HashSet<>();
         ArrayList<String> wordsA = new ArrayList<>();
         Random rng = new Random(seed);
@@ -51,6 +51,13 @@ public class WordPackingTest {
             wordsA.set(i, wordsA.get(j));
             wordsA.set(j, tmp);
         }
+        return wordsA;
+    }
+    
+    public static int test(int seed, int n, boolean verbose) {
+        if(readAllWords("sgb-words.txt", verbose)) { return 9999; }
+        List<String> wordsA = testWords(allWords, seed, n);
+        HashSet<String> wordsH = new HashSet<>(wordsA);
         if(verbose) { System.out.println("\nSeed " + seed + ": " + wordsA); }
         long startTime = System.currentTimeMillis();
         List<List<String>> result = WordPacking.wordPack(new ArrayList<String>(wordsA));